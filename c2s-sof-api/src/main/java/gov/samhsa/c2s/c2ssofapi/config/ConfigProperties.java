@@ -49,6 +49,12 @@ public class ConfigProperties {
     @NotNull
     private boolean provenanceEnabled;
 
+    @Valid
+    private LookUp lookUp = new LookUp();
+
+    @Valid
+    private ProvenanceWriter provenanceWriter = new ProvenanceWriter();
+
     @Data
     public static class Fhir {
         @NotBlank
@@ -57,6 +63,72 @@ public static class Fhir {
         private EncodingEnum encoding = EncodingEnum.JSON;
         @NotNull
         private int defaultResourceBundlePageSize;
+        // FHIR servers whose clients and cached values are kept, the least recently used ones are dropped
+        @Min(1)
+        private int maxServers = 100;
+        @Valid
+        private ConnectionPool connectionPool = new ConnectionPool();
+        @Valid
+        private RequestExecutor requestExecutor = new RequestExecutor();
+        @Valid
+        private PagePrefetch pagePrefetch = new PagePrefetch();
+        @Valid
+        private ProfileCache profileCache = new ProfileCache();
+        @Valid
+        private Validator validator = new Validator();
+
+        @Data
+        public static class ConnectionPool {
+            @Min(1)
+            private int maxTotal = 200;
+            @Min(1)
+            private int maxPerRoute = 50;
+            @Min(1)
+            private int connectTimeoutInMs = 10000;
+            @Min(1)
+            private int connectionRequestTimeoutInMs = 10000;
+            @Min(1)
+            private long keepAliveInMs = 30000;
+            @Min(1)
+            private long timeToLiveInMs = 300000;
+        }
+
+        @Data
+        public static class RequestExecutor {
+            @Min(1)
+            private int poolSize = 16;
+            @Min(0)
+            private int queueCapacity = 100;
+        }
+
+        @Data
+        public static class PagePrefetch {
+            @Min(1)
+            private int parallelism = 4;
+            @Min(1)
+            @Max(1000)
+            private int pageSize = 100;
+        }
+
+        @Data
+        public static class ProfileCache {
+            @Min(1)
+            private long timeToLiveInSeconds = 3600;
+        }
+
+        @Data
+        public static class Validator {
+            private boolean warmUpEnabled = true;
+            @Valid
+            private ResultCache resultCache = new ResultCache();
+
+            @Data
+            public static class ResultCache {
+                private boolean enabled = false;
+                @Min(1)
+                private int maxEntries = 1000;
+            }
+        }
     }
 
     @Data
@@ -67,6 +139,8 @@ public static class Consent {
         @NotNull
         private String identifierSystem;
 
+        private boolean transactionalWrite;
+
         @Valid
         private Pagination pagination = new Pagination();
 
@@ -78,6 +152,19 @@ public static class Pagination {
             @Min(1)
             @Max(500)
             private int maxSize = 50;
+            private boolean serverSide = true;
+        }
+
+        @Valid
+        private PdfExport pdfExport = new PdfExport();
+
+        @Data
+        public static class PdfExport {
+            // Number of threads rendering the PDFs of an export, 0 uses one per available processor
+            @Min(0)
+            private int renderPoolSize = 0;
+            @Min(0)
+            private int queueCapacity = 100;
         }
     }
 
@@ -149,5 +236,36 @@ public static class Mrn {
             private int length;
         }
     }
-}
 
+    @Data
+    public static class ProvenanceWriter {
+        // Queued writes do not fail the request, records that cannot be written are only logged
+        private boolean asyncEnabled = false;
+        @Min(1)
+        private int queueCapacity = 1000;
+        @Min(1)
+        @Max(500)
+        private int batchSize = 50;
+        @Min(1)
+        private int maxAttempts = 3;
+        @Min(0)
+        private long retryDelayInMs = 1000;
+        @Min(0)
+        private long drainTimeoutInMs = 30000;
+    }
+
+    @Data
+    public static class LookUp {
+        @Valid
+        private Cache cache = new Cache();
+
+        @Data
+        public static class Cache {
+            private boolean enabled = true;
+            @Min(1)
+            private long timeToLiveInSeconds = 86400;
+            @Min(1)
+            private long refreshAfterInSeconds = 3600;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package gov.samhsa.c2s.c2ssofapi.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class ExecutorConfig {
+
+    private final ConfigProperties configProperties;
+
+    public ExecutorConfig(ConfigProperties configProperties) {
+        this.configProperties = configProperties;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor fhirRequestExecutor() {
+        ConfigProperties.Fhir.RequestExecutor requestExecutor = configProperties.getFhir().getRequestExecutor();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(requestExecutor.getPoolSize());
+        executor.setMaxPoolSize(requestExecutor.getPoolSize());
+        executor.setQueueCapacity(requestExecutor.getQueueCapacity());
+        // When saturated, run on the request thread instead of failing the request
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setTaskDecorator(new RequestContextTaskDecorator());
+        executor.setDaemon(true);
+        executor.setThreadNamePrefix("fhir-request-");
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor consentPdfRenderExecutor() {
+        ConfigProperties.Consent.PdfExport pdfExport = configProperties.getConsent().getPdfExport();
+        int poolSize = pdfExport.getRenderPoolSize() > 0 ? pdfExport.getRenderPoolSize() : Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(pdfExport.getQueueCapacity());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        // Renders read the consent PDF cache with the FHIR client of the request
+        executor.setTaskDecorator(new RequestContextTaskDecorator());
+        executor.setDaemon(true);
+        executor.setThreadNamePrefix("consent-pdf-render-");
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor lookUpRefreshExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(16);
+        executor.setDaemon(true);
+        executor.setThreadNamePrefix("look-up-refresh-");
+        return executor;
+    }
+}
@@ -0,0 +1,65 @@
+package gov.samhsa.c2s.c2ssofapi.config;
+
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import static gov.samhsa.c2s.c2ssofapi.config.FhirServiceConfig.BEARER_PREFIX;
+import static gov.samhsa.c2s.c2ssofapi.config.FhirServiceConfig.EMPTY_STRING;
+import static gov.samhsa.c2s.c2ssofapi.config.FhirServiceConfig.HTTP_HEADER_AUTHORIZATION;
+
+/**
+ * Holds the access token that the shared FHIR clients send to the FHIR server. A token explicitly bound to the current
+ * thread takes precedence; otherwise the bearer token of the current HTTP request is used.
+ */
+public final class FhirAccessTokenContext {
+
+    private static final ThreadLocal<String> BOUND_ACCESS_TOKEN = new ThreadLocal<>();
+
+    private FhirAccessTokenContext() {
+    }
+
+    public static Optional<String> getAccessToken() {
+        String boundAccessToken = BOUND_ACCESS_TOKEN.get();
+        if (boundAccessToken != null) {
+            return Optional.of(boundAccessToken);
+        }
+        return getAccessTokenFromRequest();
+    }
+
+    public static Optional<String> getAccessTokenFromRequest() {
+        return getCurrentRequest()
+                .map(req -> req.getHeader(HTTP_HEADER_AUTHORIZATION))
+                .filter(auth -> auth.startsWith(BEARER_PREFIX))
+                .map(auth -> auth.replace(BEARER_PREFIX, EMPTY_STRING))
+                .filter(StringUtils::hasText);
+    }
+
+    /**
+     * Runs the action with the access token bound to the current thread, e.g. on a worker thread serving a request.
+     */
+    public static <T> T callWithAccessToken(String accessToken, Supplier<T> action) {
+        String previous = BOUND_ACCESS_TOKEN.get();
+        BOUND_ACCESS_TOKEN.set(accessToken);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                BOUND_ACCESS_TOKEN.remove();
+            } else {
+                BOUND_ACCESS_TOKEN.set(previous);
+            }
+        }
+    }
+
+    static Optional<HttpServletRequest> getCurrentRequest() {
+        return Optional.ofNullable(RequestContextHolder.getRequestAttributes())
+                .filter(ServletRequestAttributes.class::isInstance)
+                .map(ServletRequestAttributes.class::cast)
+                .map(ServletRequestAttributes::getRequest);
+    }
+}
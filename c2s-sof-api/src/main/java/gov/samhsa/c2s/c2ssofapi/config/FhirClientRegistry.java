@@ -0,0 +1,43 @@
+package gov.samhsa.c2s.c2ssofapi.config;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IClientInterceptor;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import gov.samhsa.c2s.c2ssofapi.service.util.LruMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Keeps one FHIR client per FHIR server base URL. The clients share the connection pool of the {@link FhirContext}
+ * and pick up the caller's bearer token per request, so they are safe to reuse across requests and threads.
+ * The base URL comes from the request header, so only the clients of the most recently used servers are kept.
+ */
+@Component
+@Slf4j
+public class FhirClientRegistry {
+
+    private final FhirContext fhirContext;
+
+    private final IClientInterceptor bearerTokenInterceptor = new ThreadBoundBearerTokenInterceptor();
+
+    private final Map<String, IGenericClient> clients;
+
+    public FhirClientRegistry(FhirContext fhirContext, ConfigProperties configProperties) {
+        this.fhirContext = fhirContext;
+        this.clients = Collections.synchronizedMap(new LruMap<>(configProperties.getFhir().getMaxServers()));
+    }
+
+    public IGenericClient getClient(String fhirServerUrl) {
+        return clients.computeIfAbsent(fhirServerUrl, this::createClient);
+    }
+
+    private IGenericClient createClient(String fhirServerUrl) {
+        log.info("Creating FHIR client for " + fhirServerUrl);
+        IGenericClient fhirClient = fhirContext.newRestfulGenericClient(fhirServerUrl);
+        fhirClient.registerInterceptor(bearerTokenInterceptor);
+        return fhirClient;
+    }
+}
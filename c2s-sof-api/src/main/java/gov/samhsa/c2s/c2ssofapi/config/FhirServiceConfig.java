@@ -3,9 +3,14 @@
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
-import ca.uhn.fhir.rest.client.interceptor.BearerTokenAuthInterceptor;
 import ca.uhn.fhir.validation.FhirValidator;
 import gov.samhsa.c2s.c2ssofapi.service.exception.PreconditionFailedException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.hl7.fhir.dstu3.hapi.validation.DefaultProfileValidationSupport;
 import org.hl7.fhir.dstu3.hapi.validation.FhirInstanceValidator;
 import org.hl7.fhir.dstu3.hapi.validation.ValidationSupportChain;
@@ -15,11 +20,8 @@
 import org.springframework.context.annotation.Scope;
 import org.springframework.context.annotation.ScopedProxyMode;
 import org.springframework.util.StringUtils;
-import org.springframework.web.context.request.RequestContextHolder;
-import org.springframework.web.context.request.ServletRequestAttributes;
 
-import javax.servlet.http.HttpServletRequest;
-import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class FhirServiceConfig {
@@ -35,33 +37,51 @@ public FhirServiceConfig(ConfigProperties configProperties) {
         this.configProperties = configProperties;
     }
 
+    @Bean
+    public CloseableHttpClient fhirHttpClient() {
+        final ConfigProperties.Fhir.ConnectionPool connectionPool = configProperties.getFhir().getConnectionPool();
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(connectionPool.getTimeToLiveInMs(), TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(connectionPool.getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(connectionPool.getMaxPerRoute());
+        final RequestConfig requestConfig = RequestConfig.custom()
+                .setSocketTimeout(Integer.parseInt(configProperties.getFhir().getClientSocketTimeoutInMs()))
+                .setConnectTimeout(connectionPool.getConnectTimeoutInMs())
+                .setConnectionRequestTimeout(connectionPool.getConnectionRequestTimeoutInMs())
+                .build();
+        // Keep connections alive for the duration advertised by the server, or the configured default when it does not say
+        final ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            final long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return keepAlive > 0 ? keepAlive : connectionPool.getKeepAliveInMs();
+        };
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .evictExpiredConnections()
+                .evictIdleConnections(connectionPool.getKeepAliveInMs(), TimeUnit.MILLISECONDS)
+                .disableCookieManagement()
+                .build();
+    }
+
     @Bean
     public FhirContext fhirContext() {
         FhirContext fhirContext = FhirContext.forDstu3();
         fhirContext.getRestfulClientFactory().setSocketTimeout(Integer.parseInt(configProperties.getFhir().getClientSocketTimeoutInMs()));
+        fhirContext.getRestfulClientFactory().setHttpClient(fhirHttpClient());
         return fhirContext;
     }
 
     @Bean
     @Scope(value = "request", proxyMode = ScopedProxyMode.TARGET_CLASS)
-    public IGenericClient fhirClient() {
-        final Optional<HttpServletRequest> httpServletRequest = Optional.ofNullable(RequestContextHolder.getRequestAttributes())
-                .filter(ServletRequestAttributes.class::isInstance)
-                .map(ServletRequestAttributes.class::cast)
-                .map(ServletRequestAttributes::getRequest);
-        final String fhirServerUrl = httpServletRequest
+    public IGenericClient fhirClient(FhirClientRegistry fhirClientRegistry) {
+        final String fhirServerUrl = FhirAccessTokenContext.getCurrentRequest()
                 .map(req -> req.getHeader(HTTP_HEADER_FHIR_SERVER))
                 .filter(StringUtils::hasText)
                 .orElseThrow(() -> new PreconditionFailedException("'FhirServer' header is not available in the request"));
-        final String accessToken = httpServletRequest
-                .map(req -> req.getHeader(HTTP_HEADER_AUTHORIZATION))
-                .filter(auth -> auth.startsWith(BEARER_PREFIX))
-                .map(auth -> auth.replace(BEARER_PREFIX, EMPTY_STRING))
-                .filter(StringUtils::hasText)
-                .orElseThrow(() -> new PreconditionFailedException("'Authorization' header is not avaiable in the request or it does not start with 'Bearer ' "));
-        final IGenericClient fhirClient = fhirContext().newRestfulGenericClient(fhirServerUrl);
-        fhirClient.registerInterceptor(new BearerTokenAuthInterceptor(accessToken));
-        return fhirClient;
+        if (!FhirAccessTokenContext.getAccessTokenFromRequest().isPresent()) {
+            throw new PreconditionFailedException("'Authorization' header is not avaiable in the request or it does not start with 'Bearer ' ");
+        }
+        return fhirClientRegistry.getClient(fhirServerUrl);
     }
 
     @Bean
@@ -69,12 +89,20 @@ public IParser fhirJsonParser() {
         return fhirContext().newJsonParser();
     }
 
+    @Bean
+    public SnapshotValidationSupport fhirValidationSupport() {
+        return new SnapshotValidationSupport(new DefaultProfileValidationSupport());
+    }
+
     @Bean
     public FhirValidator fhirValidator() {
-        FhirValidator validator = fhirContext().newValidator();
+        ConfigProperties.Fhir.Validator.ResultCache resultCache = configProperties.getFhir().getValidator().getResultCache();
+        FhirValidator validator = resultCache.isEnabled()
+                ? new MemoizingFhirValidator(fhirContext(), resultCache.getMaxEntries())
+                : fhirContext().newValidator();
         FhirInstanceValidator instanceValidator = new FhirInstanceValidator();
         validator.registerValidatorModule(instanceValidator);
-        ValidationSupportChain support = new ValidationSupportChain(new DefaultProfileValidationSupport());
+        ValidationSupportChain support = new ValidationSupportChain(fhirValidationSupport());
         instanceValidator.setValidationSupport(support);
         return validator;
     }
@@ -0,0 +1,92 @@
+package gov.samhsa.c2s.c2ssofapi.config;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.validation.FhirValidator;
+import ca.uhn.fhir.validation.ValidationResult;
+import gov.samhsa.c2s.c2ssofapi.constants.ConsentConstants;
+import gov.samhsa.c2s.c2ssofapi.service.util.FhirResourceUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.dstu3.model.Consent;
+import org.hl7.fhir.dstu3.model.DomainResource;
+import org.hl7.fhir.dstu3.model.Identifier;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.Period;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the validation snapshot and validates one synthetic resource of each type this API writes once all
+ * singletons are created, i.e. before the embedded server starts accepting requests, so that the first write
+ * after a deployment does not pay for parsing the DSTU3 StructureDefinitions.
+ */
+@Component
+@Slf4j
+public class FhirValidatorWarmUp implements SmartInitializingSingleton {
+
+    private static final String WARM_UP_ID = "warm-up";
+
+    private final FhirContext fhirContext;
+
+    private final FhirValidator fhirValidator;
+
+    private final SnapshotValidationSupport fhirValidationSupport;
+
+    private final ConfigProperties configProperties;
+
+    public FhirValidatorWarmUp(FhirContext fhirContext, FhirValidator fhirValidator, SnapshotValidationSupport fhirValidationSupport,
+                               ConfigProperties configProperties) {
+        this.fhirContext = fhirContext;
+        this.fhirValidator = fhirValidator;
+        this.fhirValidationSupport = fhirValidationSupport;
+        this.configProperties = configProperties;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!configProperties.getFhir().getValidator().isWarmUpEnabled()) {
+            log.info("FHIR validator warm up is disabled");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int snapshotSize = fhirValidationSupport.preload(fhirContext);
+        long snapshotLoadTimeInMs = System.currentTimeMillis() - start;
+        log.info("Indexed " + snapshotSize + " StructureDefinitions for FHIR validation in " + snapshotLoadTimeInMs + " ms");
+
+        Map<String, Long> validationTimesInMs = new LinkedHashMap<>();
+        for (DomainResource resource : syntheticResources()) {
+            String resourceName = resource.getResourceType().name();
+            long validationStart = System.currentTimeMillis();
+            try {
+                ValidationResult result = fhirValidator.validateWithResult(resource);
+                log.debug("Warm up validation of synthetic " + resourceName + " successful? " + result.isSuccessful());
+            } catch (RuntimeException e) {
+                // The warm up must never prevent the application from starting
+                log.warn("Warm up validation of synthetic " + resourceName + " failed", e);
+            }
+            validationTimesInMs.put(resourceName, System.currentTimeMillis() - validationStart);
+        }
+        log.info("FHIR validator warmed up in " + (System.currentTimeMillis() - start) + " ms, validation times in ms: " + validationTimesInMs);
+    }
+
+    private List<DomainResource> syntheticResources() {
+        Consent consent = new Consent();
+        consent.setStatus(Consent.ConsentState.DRAFT);
+        consent.setPatient(new Reference("Patient/" + WARM_UP_ID));
+        consent.setPeriod(new Period().setStart(new Date()));
+        consent.setPolicyRule("http://hl7.org/fhir/ConsentPolicy/opt-in");
+        consent.setIdentifier(new Identifier().setSystem(configProperties.getConsent().getIdentifierSystem()).setValue(WARM_UP_ID));
+
+        Organization organization = new Organization();
+        organization.setActive(true);
+        organization.setName(ConsentConstants.PSEUDO_ORGANIZATION_TAX_ID);
+
+        return Arrays.asList(consent, organization, FhirResourceUtil.createToDoActivityDefinition(WARM_UP_ID));
+    }
+}
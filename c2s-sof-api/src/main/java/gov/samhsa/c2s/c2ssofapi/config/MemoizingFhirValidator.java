@@ -0,0 +1,79 @@
+package gov.samhsa.c2s.c2ssofapi.config;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.validation.FhirValidator;
+import ca.uhn.fhir.validation.ValidationResult;
+import gov.samhsa.c2s.c2ssofapi.service.util.LruMap;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.dstu3.model.Attachment;
+import org.hl7.fhir.dstu3.model.Resource;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Validator that remembers validation outcomes by a structural hash of the validated resource.
+ * The hash is taken over the JSON encoding of the resource without its id, version, last updated
+ * timestamp and attachment data, so re-validating the same consent with a regenerated PDF is a cache hit.
+ * The most recently used outcomes are kept up to the configured number of entries.
+ */
+@Slf4j
+public class MemoizingFhirValidator extends FhirValidator {
+
+    private final FhirContext fhirContext;
+
+    private final Map<String, ValidationResult> results;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    public MemoizingFhirValidator(FhirContext fhirContext, int maxEntries) {
+        super(fhirContext);
+        this.fhirContext = fhirContext;
+        this.results = Collections.synchronizedMap(new LruMap<>(maxEntries));
+    }
+
+    @Override
+    public ValidationResult validateWithResult(IBaseResource resource) {
+        if (!(resource instanceof Resource)) {
+            return super.validateWithResult(resource);
+        }
+        String hash = structuralHash((Resource) resource);
+        ValidationResult cached = results.get(hash);
+        if (cached != null) {
+            hits.incrementAndGet();
+            log.debug("Validation result cache hit for " + resource.getClass().getSimpleName() + " (hits: " + hits + ", misses: " + misses + ")");
+            return cached;
+        }
+        misses.incrementAndGet();
+        ValidationResult result = super.validateWithResult(resource);
+        results.put(hash, result);
+        return result;
+    }
+
+    private String structuralHash(Resource resource) {
+        Resource canonical = resource.copy();
+        canonical.setId((String) null);
+        if (canonical.hasMeta()) {
+            canonical.getMeta().setVersionId(null).setLastUpdated(null);
+        }
+        fhirContext.newTerser().getAllPopulatedChildElementsOfType(canonical, Attachment.class)
+                .forEach(attachment -> attachment.setData(null));
+        byte[] encoded = fhirContext.newJsonParser().encodeResourceToString(canonical).getBytes(StandardCharsets.UTF_8);
+        try {
+            StringBuilder hash = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(encoded)) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
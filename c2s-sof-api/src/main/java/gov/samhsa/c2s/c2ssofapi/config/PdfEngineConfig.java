@@ -0,0 +1,31 @@
+package gov.samhsa.c2s.c2ssofapi.config;
+
+import gov.samhsa.c2s.c2ssofapi.service.exception.PdfConfigMissingException;
+import gov.samhsa.c2s.c2ssofapi.service.pdf.HexPdfEngine;
+import gov.samhsa.c2s.c2ssofapi.service.pdf.PdfBoxEngine;
+import gov.samhsa.c2s.c2ssofapi.service.pdf.PdfEngine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@Slf4j
+public class PdfEngineConfig {
+
+    @Bean
+    public PdfEngine pdfEngine(PdfProperties pdfProperties) {
+        final PdfEngine pdfEngine;
+        switch (pdfProperties.getEngine().toLowerCase()) {
+            case HexPdfEngine.NAME:
+                pdfEngine = new HexPdfEngine();
+                break;
+            case PdfBoxEngine.NAME:
+                pdfEngine = new PdfBoxEngine(pdfProperties.getPdfbox().getFontFile());
+                break;
+            default:
+                throw new PdfConfigMissingException("Unknown PDF engine " + pdfProperties.getEngine());
+        }
+        log.info("Rendering consent PDFs with the " + pdfEngine.getName() + " engine");
+        return pdfEngine;
+    }
+}
@@ -7,6 +7,7 @@
 import org.springframework.validation.annotation.Validated;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.util.List;
 
@@ -20,6 +21,16 @@ public class PdfProperties {
     @Valid
     public List<PdfConfig> pdfConfigs;
 
+    @Valid
+    public Cache cache = new Cache();
+
+    // Drawing engine of the consent PDFs, hexpdf or pdfbox
+    @NotBlank
+    public String engine = "hexpdf";
+
+    @Valid
+    public PdfBox pdfbox = new PdfBox();
+
     @Data
     public static class PdfConfig {
         @NotBlank
@@ -29,4 +40,21 @@ public static class PdfConfig {
         public String title;
 
     }
+
+    @Data
+    public static class Cache {
+        public boolean enabled = true;
+
+        @Min(1)
+        public long maxSizeInBytes = 64 * 1024 * 1024;
+
+        @Min(1)
+        public long timeToLiveInSeconds = 3600;
+    }
+
+    @Data
+    public static class PdfBox {
+        // TrueType font, as a file path or classpath: location, which is subset embedded in the documents
+        public String fontFile = "classpath:fonts/DejaVuSans.ttf";
+    }
 }
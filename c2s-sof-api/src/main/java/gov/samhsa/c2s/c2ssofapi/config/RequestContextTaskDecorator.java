@@ -0,0 +1,35 @@
+package gov.samhsa.c2s.c2ssofapi.config;
+
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * Runs tasks with the request attributes and FHIR access token of the submitting thread, so work fanned out from a
+ * request can use the request scoped FHIR client. The worker's previous context is restored afterwards, which keeps
+ * caller-runs execution on the request thread intact.
+ */
+public class RequestContextTaskDecorator implements TaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        String accessToken = FhirAccessTokenContext.getAccessToken().orElse(null);
+        return () -> {
+            RequestAttributes previousRequestAttributes = RequestContextHolder.getRequestAttributes();
+            RequestContextHolder.setRequestAttributes(requestAttributes);
+            try {
+                FhirAccessTokenContext.callWithAccessToken(accessToken, () -> {
+                    runnable.run();
+                    return null;
+                });
+            } finally {
+                if (previousRequestAttributes == null) {
+                    RequestContextHolder.resetRequestAttributes();
+                } else {
+                    RequestContextHolder.setRequestAttributes(previousRequestAttributes);
+                }
+            }
+        };
+    }
+}
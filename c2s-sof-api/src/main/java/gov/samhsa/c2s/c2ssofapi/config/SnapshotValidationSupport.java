@@ -0,0 +1,126 @@
+package gov.samhsa.c2s.c2ssofapi.config;
+
+import ca.uhn.fhir.context.FhirContext;
+import lombok.Value;
+import org.hl7.fhir.dstu3.hapi.ctx.IValidationSupport;
+import org.hl7.fhir.dstu3.model.CodeSystem;
+import org.hl7.fhir.dstu3.model.StructureDefinition;
+import org.hl7.fhir.dstu3.model.ValueSet;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Validation support that serves conformance resources from an in-memory snapshot of its delegate.
+ * All StructureDefinitions are loaded and indexed by URL once by {@link #preload(FhirContext)}; any other
+ * resource, code system or code system support lookup is resolved through the delegate on first use and
+ * remembered, including misses, so the validator does not search the delegate on every validation.
+ */
+public class SnapshotValidationSupport implements IValidationSupport {
+
+    private final IValidationSupport delegate;
+
+    private volatile Map<String, StructureDefinition> structureDefinitions;
+    private volatile List<StructureDefinition> allStructureDefinitions;
+
+    private final ConcurrentMap<ResourceKey, Optional<IBaseResource>> resources = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Optional<CodeSystem>> codeSystems = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Boolean> supportedCodeSystems = new ConcurrentHashMap<>();
+
+    public SnapshotValidationSupport(IValidationSupport delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Loads and indexes the StructureDefinitions of the delegate, returning how many were indexed.
+     */
+    public synchronized int preload(FhirContext fhirContext) {
+        if (structureDefinitions == null) {
+            List<StructureDefinition> all = delegate.fetchAllStructureDefinitions(fhirContext);
+            allStructureDefinitions = Collections.unmodifiableList(all);
+            structureDefinitions = Collections.unmodifiableMap(all.stream()
+                    .filter(structureDefinition -> structureDefinition.getUrl() != null)
+                    .collect(Collectors.toMap(StructureDefinition::getUrl, Function.identity(), (first, second) -> first)));
+        }
+        return structureDefinitions.size();
+    }
+
+    @Override
+    public ValueSet.ValueSetExpansionComponent expandValueSet(FhirContext theContext, ValueSet.ConceptSetComponent theInclude) {
+        return delegate.expandValueSet(theContext, theInclude);
+    }
+
+    @Override
+    public List<IBaseResource> fetchAllConformanceResources(FhirContext theContext) {
+        return delegate.fetchAllConformanceResources(theContext);
+    }
+
+    @Override
+    public List<StructureDefinition> fetchAllStructureDefinitions(FhirContext theContext) {
+        ensurePreloaded(theContext);
+        return allStructureDefinitions;
+    }
+
+    @Override
+    public CodeSystem fetchCodeSystem(FhirContext theContext, String theSystem) {
+        if (theSystem == null) {
+            return delegate.fetchCodeSystem(theContext, null);
+        }
+        return codeSystems.computeIfAbsent(theSystem, system -> Optional.ofNullable(delegate.fetchCodeSystem(theContext, system)))
+                .orElse(null);
+    }
+
+    @Override
+    public <T extends IBaseResource> T fetchResource(FhirContext theContext, Class<T> theClass, String theUri) {
+        if (StructureDefinition.class.equals(theClass)) {
+            ensurePreloaded(theContext);
+            StructureDefinition structureDefinition = structureDefinitions.get(theUri);
+            if (structureDefinition != null) {
+                return theClass.cast(structureDefinition);
+            }
+        }
+        if (theUri == null) {
+            return delegate.fetchResource(theContext, theClass, null);
+        }
+        return theClass.cast(resources.computeIfAbsent(new ResourceKey(theClass, theUri),
+                key -> Optional.ofNullable(delegate.fetchResource(theContext, theClass, theUri)))
+                .orElse(null));
+    }
+
+    @Override
+    public StructureDefinition fetchStructureDefinition(FhirContext theCtx, String theUrl) {
+        return fetchResource(theCtx, StructureDefinition.class, theUrl);
+    }
+
+    @Override
+    public boolean isCodeSystemSupported(FhirContext theContext, String theSystem) {
+        if (theSystem == null) {
+            return delegate.isCodeSystemSupported(theContext, null);
+        }
+        return supportedCodeSystems.computeIfAbsent(theSystem, system -> delegate.isCodeSystemSupported(theContext, system));
+    }
+
+    @Override
+    public CodeValidationResult validateCode(FhirContext theContext, String theCodeSystem, String theCode, String theDisplay) {
+        return delegate.validateCode(theContext, theCodeSystem, theCode, theDisplay);
+    }
+
+    private void ensurePreloaded(FhirContext fhirContext) {
+        if (structureDefinitions == null) {
+            preload(fhirContext);
+        }
+    }
+
+    @Value
+    private static class ResourceKey {
+        Class<?> type;
+        String uri;
+    }
+}
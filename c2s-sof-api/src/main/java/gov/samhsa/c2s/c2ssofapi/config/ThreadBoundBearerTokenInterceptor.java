@@ -0,0 +1,25 @@
+package gov.samhsa.c2s.c2ssofapi.config;
+
+import ca.uhn.fhir.rest.client.api.IClientInterceptor;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+
+import static gov.samhsa.c2s.c2ssofapi.config.FhirServiceConfig.BEARER_PREFIX;
+import static gov.samhsa.c2s.c2ssofapi.config.FhirServiceConfig.HTTP_HEADER_AUTHORIZATION;
+
+/**
+ * Adds the bearer token from {@link FhirAccessTokenContext} to each outgoing request, so a single client instance can
+ * be shared by requests carrying different tokens.
+ */
+public class ThreadBoundBearerTokenInterceptor implements IClientInterceptor {
+
+    @Override
+    public void interceptRequest(IHttpRequest theRequest) {
+        FhirAccessTokenContext.getAccessToken()
+                .ifPresent(accessToken -> theRequest.addHeader(HTTP_HEADER_AUTHORIZATION, BEARER_PREFIX + accessToken));
+    }
+
+    @Override
+    public void interceptResponse(IHttpResponse theResponse) {
+    }
+}
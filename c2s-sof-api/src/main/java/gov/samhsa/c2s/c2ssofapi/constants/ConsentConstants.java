@@ -17,6 +17,8 @@ public final class ConsentConstants {
     public static final String CONTENT_TYPE = "application/pdf";
     public static final Boolean OPERATED_BY_PATIENT = true;
 
+    public static final String CONSENT_PDF_TYPE = "consent-pdf";
+
     // PRIVATE //
     private ConsentConstants(){
         throw new AssertionError();
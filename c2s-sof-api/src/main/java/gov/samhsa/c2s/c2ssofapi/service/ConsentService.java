@@ -2,19 +2,21 @@
 
 import gov.samhsa.c2s.c2ssofapi.service.dto.AbstractCareTeamDto;
 import gov.samhsa.c2s.c2ssofapi.service.dto.ConsentDto;
+import gov.samhsa.c2s.c2ssofapi.service.dto.ConsentProjection;
 import gov.samhsa.c2s.c2ssofapi.service.dto.DetailedConsentDto;
 import gov.samhsa.c2s.c2ssofapi.service.dto.GeneralConsentRelatedFieldDto;
 import gov.samhsa.c2s.c2ssofapi.service.dto.PageDto;
 import gov.samhsa.c2s.c2ssofapi.service.dto.PdfDto;
 
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Optional;
 
 public interface ConsentService {
 
-    PageDto<DetailedConsentDto> getConsents(Optional<String> patient, Optional<String> practitioner, Optional<String> status, Optional<Boolean> generalDesignation, Optional<Integer> pageNumber, Optional<Integer> pageSize);
+    PageDto<DetailedConsentDto> getConsents(Optional<String> patient, Optional<String> practitioner, Optional<String> status, Optional<Boolean> generalDesignation, Optional<Integer> pageNumber, Optional<Integer> pageSize, Optional<ConsentProjection> projection);
 
-    void createConsent(ConsentDto consentDto);
+    void createConsent(ConsentDto consentDto, Optional<String> idempotencyKey);
 
     void updateConsent(String consentId, ConsentDto consentDto);
 
@@ -24,6 +26,8 @@ public interface ConsentService {
 
     PdfDto createConsentPdf(String consentId);
 
+    void exportConsentPdfs(Optional<String> patient, Optional<String> organization, OutputStream outputStream);
+
     void attestConsent(String consentId);
 
     void revokeConsent(String consentId);
@@ -12,6 +12,7 @@
 import gov.samhsa.c2s.c2ssofapi.service.dto.AbstractCareTeamDto;
 import gov.samhsa.c2s.c2ssofapi.service.dto.ConsentDto;
 import gov.samhsa.c2s.c2ssofapi.service.dto.ConsentMedicalInfoType;
+import gov.samhsa.c2s.c2ssofapi.service.dto.ConsentProjection;
 import gov.samhsa.c2s.c2ssofapi.service.dto.DetailedConsentDto;
 import gov.samhsa.c2s.c2ssofapi.service.dto.GeneralConsentRelatedFieldDto;
 import gov.samhsa.c2s.c2ssofapi.service.dto.PageDto;
@@ -24,43 +25,56 @@
 import gov.samhsa.c2s.c2ssofapi.service.exception.NoDataFoundException;
 import gov.samhsa.c2s.c2ssofapi.service.exception.PreconditionFailedException;
 import gov.samhsa.c2s.c2ssofapi.service.exception.ResourceNotFoundException;
+import gov.samhsa.c2s.c2ssofapi.service.pdf.ConsentPdfArchiveWriter;
+import gov.samhsa.c2s.c2ssofapi.service.pdf.ConsentPdfCache;
 import gov.samhsa.c2s.c2ssofapi.service.pdf.ConsentPdfGenerator;
 import gov.samhsa.c2s.c2ssofapi.service.pdf.ConsentRevocationPdfGenerator;
 import gov.samhsa.c2s.c2ssofapi.service.util.FhirDtoUtil;
 import gov.samhsa.c2s.c2ssofapi.service.util.FhirOperationUtil;
 import gov.samhsa.c2s.c2ssofapi.service.util.FhirProfileUtil;
 import gov.samhsa.c2s.c2ssofapi.service.util.FhirResourceUtil;
+import gov.samhsa.c2s.c2ssofapi.service.util.FutureUtil;
+import gov.samhsa.c2s.c2ssofapi.service.util.LruMap;
 import gov.samhsa.c2s.c2ssofapi.service.util.PaginationUtil;
+import gov.samhsa.c2s.c2ssofapi.service.util.SearchResultMerger;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
-import org.hl7.fhir.dstu3.model.ActivityDefinition;
-import org.hl7.fhir.dstu3.model.Address;
 import org.hl7.fhir.dstu3.model.Attachment;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.CareTeam;
 import org.hl7.fhir.dstu3.model.CodeableConcept;
 import org.hl7.fhir.dstu3.model.Coding;
 import org.hl7.fhir.dstu3.model.Consent;
-import org.hl7.fhir.dstu3.model.ContactPoint;
 import org.hl7.fhir.dstu3.model.Identifier;
-import org.hl7.fhir.dstu3.model.Organization;
 import org.hl7.fhir.dstu3.model.Period;
 import org.hl7.fhir.dstu3.model.ResourceType;
-import org.hl7.fhir.dstu3.model.StringType;
-import org.hl7.fhir.dstu3.model.codesystems.ConsentStatus;
 import org.hl7.fhir.dstu3.model.codesystems.V3ActReason;
 import org.hl7.fhir.exceptions.FHIRException;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 import static ca.uhn.fhir.rest.api.Constants.PARAM_LASTUPDATED;
 import static java.util.stream.Collectors.toList;
@@ -70,6 +84,8 @@
 @Slf4j
 public class ConsentServiceImpl implements ConsentService {
 
+    private static final String CONSENT_PDF_LINK_TEMPLATE = "/consents/%s/pdf";
+
     private final IGenericClient fhirClient;
     private final LookUpService lookUpService;
     private final ConfigProperties configProperties;
@@ -79,9 +95,15 @@ public class ConsentServiceImpl implements ConsentService {
 
     private final PatientService patientService;
     private final ProvenanceUtil provenanceUtil;
+    private final PseudoOrganizationResolver pseudoOrganizationResolver;
+    private final FhirProfileUtil fhirProfileUtil;
+    private final ConsentPdfCache consentPdfCache;
 
     private final FhirValidator fhirValidator;
 
+    private final Executor fhirRequestExecutor;
+
+    private final ThreadPoolTaskExecutor consentPdfRenderExecutor;
 
     @Autowired
     public ConsentServiceImpl(ModelMapper modelMapper,
@@ -91,7 +113,12 @@ public ConsentServiceImpl(ModelMapper modelMapper,
                               ConsentPdfGenerator consentPdfGenerator,
                               ConsentRevocationPdfGenerator consentRevocationPdfGenerator,
                               PatientService patientService, FhirValidator fhirValidator,
-                              ProvenanceUtil provenanceUtil) {
+                              ProvenanceUtil provenanceUtil,
+                              PseudoOrganizationResolver pseudoOrganizationResolver,
+                              FhirProfileUtil fhirProfileUtil,
+                              ConsentPdfCache consentPdfCache,
+                              @Qualifier("fhirRequestExecutor") Executor fhirRequestExecutor,
+                              @Qualifier("consentPdfRenderExecutor") ThreadPoolTaskExecutor consentPdfRenderExecutor) {
         this.modelMapper = modelMapper;
         this.fhirClient = fhirClient;
         this.lookUpService = lookUpService;
@@ -101,70 +128,58 @@ public ConsentServiceImpl(ModelMapper modelMapper,
         this.patientService = patientService;
         this.fhirValidator = fhirValidator;
         this.provenanceUtil = provenanceUtil;
+        this.pseudoOrganizationResolver = pseudoOrganizationResolver;
+        this.fhirProfileUtil = fhirProfileUtil;
+        this.consentPdfCache = consentPdfCache;
+        this.fhirRequestExecutor = fhirRequestExecutor;
+        this.consentPdfRenderExecutor = consentPdfRenderExecutor;
     }
 
     @Override
-    public PageDto<DetailedConsentDto> getConsents(Optional<String> patient, Optional<String> practitioner, Optional<String> status, Optional<Boolean> generalDesignation, Optional<Integer> pageNumber, Optional<Integer> pageSize) {
+    public PageDto<DetailedConsentDto> getConsents(Optional<String> patient, Optional<String> practitioner, Optional<String> status, Optional<Boolean> generalDesignation, Optional<Integer> pageNumber, Optional<Integer> pageSize, Optional<ConsentProjection> projection) {
 
         int numberOfConsentsPerPage = PaginationUtil.getValidPageSize(configProperties, pageSize, ResourceType.Consent.name());
 
-        // Generate the Query Based on Input Variables
-        IQuery consentQueryWithCareTeam = getConsentIQuery(patient, practitioner, status, generalDesignation);
+        // Consents sharing a care team with the practitioner, plus those naming the practitioner as an actor directly
+        List<IQuery<?>> consentQueries = new ArrayList<>();
+        consentQueries.add(getConsentIQuery(patient, practitioner, status, generalDesignation));
+        practitioner.ifPresent(pr -> consentQueries.add(getConsentIQuery(patient, Optional.empty(), status, generalDesignation)
+                .where(new ReferenceClientParam("actor").hasId(ResourceType.Practitioner.name() + "/" + pr))));
 
-        IQuery finalConsentQueryWithCareTeam = consentQueryWithCareTeam;
+        Predicate<Bundle.BundleEntryComponent> notEnteredInError = consentEntry -> ((Consent) consentEntry.getResource()).getStatus() != Consent.ConsentState.ENTEREDINERROR;
 
-        if (!status.isPresent()) {
-            practitioner.ifPresent(pr -> {
-                if (!getCareTeamIdsFromPractitioner(pr).isEmpty()) {
-                    finalConsentQueryWithCareTeam.where(new ReferenceClientParam("actor").hasAnyOfIds(getCareTeamIdsFromPractitioner(pr)));
-                }
+        PageDto<Bundle.BundleEntryComponent> consentEntryPage;
+        if (configProperties.getConsent().getPagination().isServerSide()) {
+            consentEntryPage = SearchResultMerger.getMergedPage(consentQueries, notEnteredInError, numberOfConsentsPerPage, pageNumber, configProperties.getResourceSinglePageLimit(), fhirClient);
+        } else {
+            Map<String, Bundle.BundleEntryComponent> consentEntriesById = new LinkedHashMap<>();
+            consentQueries.forEach(consentQuery -> {
+                // Disable caching to get latest data
+                Bundle consentBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(consentQuery).returnBundle(Bundle.class).execute();
+                FhirOperationUtil.getAllBundleComponentsAsList(consentBundle, Optional.of(numberOfConsentsPerPage), fhirClient, configProperties, fhirRequestExecutor)
+                        .forEach(consentEntry -> consentEntriesById.putIfAbsent(consentEntry.getResource().getIdElement().getIdPart(), consentEntry));
             });
+            List<Bundle.BundleEntryComponent> consentEntries = consentEntriesById.values().stream()
+                    .filter(notEnteredInError)
+                    .sorted(Comparator.comparing((Bundle.BundleEntryComponent consentEntry) -> consentEntry.getResource().getMeta().getLastUpdated(), Comparator.nullsLast(Comparator.reverseOrder())))
+                    .collect(toList());
+            consentEntryPage = (PageDto<Bundle.BundleEntryComponent>) PaginationUtil.applyPaginationForCustomArrayList(consentEntries, numberOfConsentsPerPage, pageNumber, false);
         }
 
-        // Disable caching to get latest data
-        consentQueryWithCareTeam = FhirOperationUtil.setNoCacheControlDirective(finalConsentQueryWithCareTeam);
+        // Only the requested page is mapped to DTOs, so its actors can be resolved in one batch
+        boolean includeSourceAttachment = projection.orElse(ConsentProjection.FULL) == ConsentProjection.FULL;
+        List<DetailedConsentDto> consentDtosList = convertConsentBundleEntriesToConsentDtos(consentEntryPage.getElements(), includeSourceAttachment);
 
-        Bundle consentBundleWithCareTeam = (Bundle) consentQueryWithCareTeam.returnBundle(Bundle.class).execute();
-
-        List<Bundle.BundleEntryComponent> consentBundleEntryWithCareTeam = FhirOperationUtil.getAllBundleComponentsAsList(consentBundleWithCareTeam, Optional.of(numberOfConsentsPerPage), fhirClient, configProperties);
-
-        List<Bundle.BundleEntryComponent> bundleEntryComponentList = new ArrayList<>();
-        if (!practitioner.isPresent()) {
-            bundleEntryComponentList.addAll(consentBundleEntryWithCareTeam);
-        }
-        //Get consent according to the practitioner.
-        practitioner.ifPresent(pr -> {
-            Bundle bundle = (Bundle) getConsentIQuery(patient, Optional.empty(), status, generalDesignation).returnBundle(Bundle.class).execute();
-            List<Bundle.BundleEntryComponent> consents = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.ofNullable(numberOfConsentsPerPage), fhirClient, configProperties)
-                    .stream().filter(cs -> {
-                                Consent consent = (Consent) cs.getResource();
-                                return !consent.getActor().stream()
-                                        .filter(ac -> ac.getReference().getReference()
-                                                .split("/")[1].equalsIgnoreCase(pr))
-                                        .collect(toList()).isEmpty();
-                            }
-                    ).collect(toList());
-            bundleEntryComponentList.addAll(consents);
-
-
-            Bundle bundleForGeneralDesignation = (Bundle) getConsentIQuery(patient, Optional.ofNullable(pr), status, generalDesignation).returnBundle(Bundle.class).execute();
-            bundleEntryComponentList.addAll(FhirOperationUtil.getAllBundleComponentsAsList(bundleForGeneralDesignation, Optional.ofNullable(numberOfConsentsPerPage), fhirClient, configProperties));
-        });
-
-        bundleEntryComponentList.stream().distinct().collect(toList());
-
-
-        // Map to DTO
-        List<DetailedConsentDto> consentDtosList = bundleEntryComponentList.stream().map(this::convertConsentBundleEntryToConsentDto).filter(
-                consent -> !consent.getStatus().equalsIgnoreCase(ConsentStatus.ENTEREDINERROR.toString())
-        ).collect(toList());
-
-        return (PageDto<DetailedConsentDto>) PaginationUtil.applyPaginationForCustomArrayList(consentDtosList, numberOfConsentsPerPage, pageNumber, false);
+        return new PageDto<>(consentDtosList, consentEntryPage.getSize(), consentEntryPage.getTotalNumberOfPages(), consentEntryPage.getCurrentPage(), consentDtosList.size(), consentEntryPage.getTotalElements());
 
     }
 
     @Override
     public DetailedConsentDto getConsentsById(String consentId) {
+        return getDetailedConsentById(consentId, true);
+    }
+
+    private DetailedConsentDto getDetailedConsentById(String consentId, boolean includeSourceAttachment) {
         log.info("Searching for consentId: " + consentId);
         IQuery consentQuery = fhirClient.search().forResource(Consent.class)
                 .where(new TokenClientParam("_id").exactly().code(consentId.trim()));
@@ -182,7 +197,7 @@ public DetailedConsentDto getConsentsById(String consentId) {
         log.info("FHIR consent bundle retrieved from FHIR server successfully for consent ID:" + consentId);
 
         Bundle.BundleEntryComponent retrievedConsent = consentBundle.getEntry().get(0);
-        return convertConsentBundleEntryToConsentDto(retrievedConsent);
+        return convertConsentBundleEntryToConsentDto(retrievedConsent, includeSourceAttachment);
     }
 
     @Override
@@ -203,15 +218,9 @@ public GeneralConsentRelatedFieldDto getGeneralConsentRelatedFields(String patie
             generalConsentRelatedFieldDto.setToActors(toActors);
 
             //Adding from careTeams
-            Bundle organizationBundle = getPseudoOrganization();
-
-            organizationBundle.getEntry().stream().findAny().ifPresent(entry -> {
-                Organization organization = (Organization) entry.getResource();
-                ReferenceDto referenceDto = new ReferenceDto();
-                referenceDto.setReference("Organization/" + organization.getIdElement().getIdPart());
-                referenceDto.setDisplay(ConsentConstants.PSEUDO_ORGANIZATION_NAME);
-                generalConsentRelatedFieldDto.setFromActors(Collections.singletonList(referenceDto));
-            });
+            ReferenceDto referenceDto = pseudoOrganizationResolver.getPseudoOrganizationReference();
+            referenceDto.setDisplay(ConsentConstants.PSEUDO_ORGANIZATION_NAME);
+            generalConsentRelatedFieldDto.setFromActors(Collections.singletonList(referenceDto));
 
             generalConsentRelatedFieldDto.setPurposeOfUse(FhirDtoUtil.convertCodeToValueSetDto(V3ActReason.TREAT.toCode(), lookUpService.getConsentPurposeOfUse()));
             generalConsentRelatedFieldDto.setMedicalInformation(lookUpService.getConsentSecurityLabel());
@@ -224,29 +233,23 @@ public GeneralConsentRelatedFieldDto getGeneralConsentRelatedFields(String patie
 
 
     @Override
-    public void createConsent(ConsentDto consentDto) {
+    public void createConsent(ConsentDto consentDto, Optional<String> idempotencyKey) {
         //Create Consent
-        List<String> idList = new ArrayList<>();
-
-        Bundle associatedCareTeam = fhirClient.search().forResource(CareTeam.class).where(new ReferenceClientParam("patient").hasId(consentDto.getPatient().getReference()))
-                .returnBundle(Bundle.class).execute();
         if (consentDto.isGeneralDesignation()) {
+            // Only general designation consents depend on the patient's care teams
+            Bundle associatedCareTeam = fhirClient.search().forResource(CareTeam.class).where(new ReferenceClientParam("patient").hasId(consentDto.getPatient().getReference()))
+                    .returnBundle(Bundle.class).execute();
             if (!associatedCareTeam.getEntry().isEmpty()) {
                 if (!isDuplicate(consentDto, Optional.empty())) {
                     Consent consent = consentDtoToConsent(Optional.empty(), consentDto);
                     //Set Profile Meta Data
-                    FhirProfileUtil.setConsentProfileMetaData(fhirClient, consent);
+                    fhirProfileUtil.setConsentProfileMetaData(fhirClient, consent);
 
                     //Validate
                     FhirOperationUtil.validateFhirResource(fhirValidator, consent, Optional.empty(), ResourceType.Consent.name(), "Create Consent");
 
                     //Create
-                    MethodOutcome methodOutcome = FhirOperationUtil.createFhirResource(fhirClient, consent, ResourceType.Consent.name());
-                    idList.add(ResourceType.Consent.name() + "/" + FhirOperationUtil.getFhirId(methodOutcome));
-
-                    if(configProperties.isProvenanceEnabled()) {
-                        provenanceUtil.createProvenance(idList, ProvenanceActivityEnum.CREATE, Optional.empty());
-                    }
+                    createConsentResource(consent, idempotencyKey);
                 } else {
                     throw new DuplicateResourceFoundException("This patient already has a general designation consent.");
                 }
@@ -257,19 +260,71 @@ public void createConsent(ConsentDto consentDto) {
             Consent consent = consentDtoToConsent(Optional.empty(), consentDto);
 
             //Set Profile Meta Data
-            FhirProfileUtil.setConsentProfileMetaData(fhirClient, consent);
+            fhirProfileUtil.setConsentProfileMetaData(fhirClient, consent);
 
             //Validate
             FhirOperationUtil.validateFhirResource(fhirValidator, consent, Optional.empty(), ResourceType.Consent.name(), "Create Consent");
 
             //Create
-            MethodOutcome methodOutcome = FhirOperationUtil.createFhirResource(fhirClient, consent, ResourceType.Consent.name());
+            createConsentResource(consent, idempotencyKey);
+        }
+    }
+
+    /**
+     * With an idempotency key, the identifier of the consent is derived from the key and the patient and the consent
+     * is only created if no consent has this identifier yet, so a retried request does not create a second consent
+     * nor a second provenance.
+     */
+    private void createConsentResource(Consent consent, Optional<String> idempotencyKey) {
+        idempotencyKey.ifPresent(key -> consent.getIdentifier().setValue(UUID.nameUUIDFromBytes(
+                (consent.getPatient().getReference() + "|" + key).getBytes(StandardCharsets.UTF_8)).toString()));
+        Optional<String> identifierMatch = idempotencyKey.map(key -> "identifier=" + consent.getIdentifier().getSystem() + "|" + consent.getIdentifier().getValue());
+
+        if (configProperties.getConsent().isTransactionalWrite()) {
+            createConsentInTransaction(consent, identifierMatch);
+            return;
+        }
+        MethodOutcome methodOutcome = identifierMatch.isPresent() ?
+                FhirOperationUtil.createFhirResourceIfNoneExist(fhirClient, consent, ResourceType.Consent.name() + "?" + identifierMatch.get(), ResourceType.Consent.name()) :
+                FhirOperationUtil.createFhirResource(fhirClient, consent, ResourceType.Consent.name());
+        boolean created = !identifierMatch.isPresent() || Boolean.TRUE.equals(methodOutcome.getCreated());
+
+        if (configProperties.isProvenanceEnabled() && created) {
+            List<String> idList = new ArrayList<>();
             idList.add(ResourceType.Consent.name() + "/" + FhirOperationUtil.getFhirId(methodOutcome));
+            provenanceUtil.createProvenance(idList, ProvenanceActivityEnum.CREATE, Optional.empty());
+        }
+    }
 
-            if(configProperties.isProvenanceEnabled()) {
-                provenanceUtil.createProvenance(idList, ProvenanceActivityEnum.CREATE, Optional.empty());
-            }
+    /**
+     * Creates the consent and its provenance in one FHIR transaction. The provenance targets the consent by its
+     * temporary id, which the server resolves to the id it assigns. With an identifier match, both are created
+     * conditionally: when a consent with the identifier exists, the provenance search matches the provenance written
+     * with it and neither is created again.
+     */
+    private void createConsentInTransaction(Consent consent, Optional<String> identifierMatch) {
+        String consentFullUrl = "urn:uuid:" + UUID.randomUUID();
+        Bundle transaction = new Bundle().setType(Bundle.BundleType.TRANSACTION);
+        Bundle.BundleEntryRequestComponent consentRequest = transaction.addEntry()
+                .setFullUrl(consentFullUrl)
+                .setResource(consent)
+                .getRequest()
+                .setMethod(Bundle.HTTPVerb.POST)
+                .setUrl(ResourceType.Consent.name());
+        identifierMatch.ifPresent(consentRequest::setIfNoneExist);
+
+        if (configProperties.isProvenanceEnabled()) {
+            Bundle.BundleEntryRequestComponent provenanceRequest = transaction.addEntry()
+                    .setResource(provenanceUtil.buildProvenance(Collections.singletonList(consentFullUrl), ProvenanceActivityEnum.CREATE, Optional.empty()))
+                    .getRequest()
+                    .setMethod(Bundle.HTTPVerb.POST)
+                    .setUrl(ResourceType.Provenance.name());
+            identifierMatch.ifPresent(match -> provenanceRequest.setIfNoneExist("target:" + ResourceType.Consent.name() + "." + match));
         }
+
+        Bundle response = FhirOperationUtil.executeTransaction(fhirClient, transaction, "Create Consent");
+        Bundle.BundleEntryResponseComponent consentResponse = response.getEntryFirstRep().getResponse();
+        log.info((!consentResponse.hasStatus() || consentResponse.getStatus().startsWith("201") ? "Created a new " : "Found an existing ") + ResourceType.Consent.name() + " : " + consentResponse.getLocation());
     }
 
     @Override
@@ -282,7 +337,7 @@ public void updateConsent(String consentId, ConsentDto consentDto) {
             consent.setId(consentId);
 
             //Set Profile Meta Data
-            FhirProfileUtil.setConsentProfileMetaData(fhirClient, consent);
+            fhirProfileUtil.setConsentProfileMetaData(fhirClient, consent);
 
             //Validate
             FhirOperationUtil.validateFhirResource(fhirValidator, consent, Optional.of(consentId), ResourceType.Consent.name(), "Update Consent");
@@ -304,14 +359,17 @@ public void updateConsent(String consentId, ConsentDto consentDto) {
     public PageDto<AbstractCareTeamDto> getActors(Optional<String> patientId, Optional<String> name, Optional<String> actorType, Optional<List<String>> actorsAlreadyAssigned, Optional<Integer> pageNumber, Optional<Integer> pageSize) {
         int numberOfActorsPerPage = PaginationUtil.getValidPageSize(configProperties, pageSize, ResourceType.Consent.name());
 
-        //Getting List of practitioners
-        List<AbstractCareTeamDto> abstractCareTeamDtoList = FhirResourceUtil.getPractitionerActors(patientId, name, Optional.empty(), Optional.empty(), fhirClient, configProperties);
+        //Resolve the patient's care team participants once for all actor types
+        List<String> participantIds = FhirResourceUtil.getCareTeamParticipantIdsFromPatient(patientId, fhirClient);
 
-        //Add organizations
-        abstractCareTeamDtoList.addAll(FhirResourceUtil.getOrganizationActors(patientId, name, Optional.empty(), Optional.empty(), fhirClient, configProperties));
+        //Search practitioners, organizations and related persons concurrently
+        CompletableFuture<List<AbstractCareTeamDto>> practitionerActors = CompletableFuture.supplyAsync(() -> FhirResourceUtil.searchPractitionerActors(participantIds, name, fhirClient), fhirRequestExecutor);
+        CompletableFuture<List<AbstractCareTeamDto>> organizationActors = CompletableFuture.supplyAsync(() -> FhirResourceUtil.searchOrganizationActors(participantIds, name, fhirClient), fhirRequestExecutor);
+        CompletableFuture<List<AbstractCareTeamDto>> relatedPersonActors = CompletableFuture.supplyAsync(() -> FhirResourceUtil.searchRelatedPersonActors(participantIds, name, fhirClient), fhirRequestExecutor);
 
-        //Add related Person
-        abstractCareTeamDtoList.addAll(FhirResourceUtil.getRelatedPersonActors(patientId, name, Optional.empty(), Optional.empty(), fhirClient, configProperties));
+        List<AbstractCareTeamDto> abstractCareTeamDtoList = new ArrayList<>(FutureUtil.join(practitionerActors));
+        abstractCareTeamDtoList.addAll(FutureUtil.join(organizationActors));
+        abstractCareTeamDtoList.addAll(FutureUtil.join(relatedPersonActors));
 
         actorType.ifPresent(type -> abstractCareTeamDtoList.removeIf(actors -> !actors.getCareTeamType().toString().equalsIgnoreCase(type)));
         actorsAlreadyAssigned.ifPresent(actorsAlreadyPresent -> abstractCareTeamDtoList.removeIf(abstractCareTeamDto -> actorsAlreadyPresent.contains(abstractCareTeamDto.getId())));
@@ -320,13 +378,40 @@ public PageDto<AbstractCareTeamDto> getActors(Optional<String> patientId, Option
     }
 
 
-    private DetailedConsentDto convertConsentBundleEntryToConsentDto(Bundle.BundleEntryComponent fhirConsentDtoModel) {
+    private DetailedConsentDto convertConsentBundleEntryToConsentDto(Bundle.BundleEntryComponent fhirConsentDtoModel, boolean includeSourceAttachment) {
+        return convertConsentBundleEntriesToConsentDtos(Collections.singletonList(fhirConsentDtoModel), includeSourceAttachment).get(0);
+    }
+
+    private List<DetailedConsentDto> convertConsentBundleEntriesToConsentDtos(List<Bundle.BundleEntryComponent> fhirConsentDtoModels, boolean includeSourceAttachment) {
+        List<ConsentDto> consentDtos = fhirConsentDtoModels.stream().map(this::mapConsentBundleEntryToConsentDto).collect(toList());
+
+        // Resolve the actors of all consents with one search per actor type
+        List<String> actorReferences = consentDtos.stream()
+                .flatMap(consentDto -> Stream.concat(consentDto.getFromActor().stream(), consentDto.getToActor().stream()))
+                .map(ReferenceDto::getReference)
+                .distinct()
+                .collect(toList());
+        Map<String, AbstractCareTeamDto> actorsByReference = FhirResourceUtil.getActorsByReferences(actorReferences, fhirClient);
+
+        List<DetailedConsentDto> detailedConsentDtos = new ArrayList<>();
+        for (int i = 0; i < fhirConsentDtoModels.size(); i++) {
+            Consent consent = (Consent) fhirConsentDtoModels.get(i).getResource();
+            ConsentDto consentDto = consentDtos.get(i);
+            DetailedConsentDto detailedConsentDto = convertConsentDtoToDetailedConsentDto(consentDto, actorsByReference);
+            detailedConsentDto.setSourceAttachmentLink(String.format(CONSENT_PDF_LINK_TEMPLATE, consent.getIdElement().getIdPart()));
+            if (includeSourceAttachment) {
+                setSourceAttachment(consent, consentDto, detailedConsentDto);
+            }
+            detailedConsentDtos.add(detailedConsentDto);
+        }
+        return detailedConsentDtos;
+    }
+
+    private ConsentDto mapConsentBundleEntryToConsentDto(Bundle.BundleEntryComponent fhirConsentDtoModel) {
         ConsentDto consentDto = modelMapper.map(fhirConsentDtoModel.getResource(), ConsentDto.class);
 
         consentDto.getFromActor().stream().filter(member -> member.getDisplay().trim().equalsIgnoreCase(ConsentConstants.PSEUDO_ORGANIZATION_NAME.trim())).map(member -> true).forEach(consentDto::setGeneralDesignation);
 
-        Consent consent = (Consent) fhirConsentDtoModel.getResource();
-
         //setting medical info type
         if (consentDto.getMedicalInformation() != null) {
             int totalMedicalInfo = lookUpService.getConsentSecurityLabel() != null ?
@@ -337,17 +422,17 @@ private DetailedConsentDto convertConsentBundleEntryToConsentDto(Bundle.BundleEn
                 consentDto.setConsentMedicalInfoType(ConsentMedicalInfoType.SHARE_ALL);
             }
         }
+        return consentDto;
+    }
 
-        DetailedConsentDto detailedConsentDto = convertConsentDtoToDetailedConsentDto(consentDto);
-
+    private void setSourceAttachment(Consent consent, ConsentDto consentDto, DetailedConsentDto detailedConsentDto) {
         try {
             if (consent.hasSourceAttachment() && !consentDto.getStatus().equalsIgnoreCase("draft")) {
                 detailedConsentDto.setSourceAttachment(consent.getSourceAttachment().getData());
             } else if (consentDto.getStatus().equalsIgnoreCase("draft")) {
                 String patientID = consentDto.getPatient().getReference().replace("Patient/", "");
                 PatientDto patientDto = patientService.getPatientById(patientID, Optional.empty());
-                log.info("Generating consent PDF");
-                byte[] pdfBytes = consentPdfGenerator.generateConsentPdf(detailedConsentDto, patientDto, ConsentConstants.OPERATED_BY_PATIENT, Optional.empty());
+                byte[] pdfBytes = getCachedConsentPdf(consent, detailedConsentDto, patientDto);
                 detailedConsentDto.setSourceAttachment(pdfBytes);
             }
 
@@ -355,8 +440,6 @@ private DetailedConsentDto convertConsentBundleEntryToConsentDto(Bundle.BundleEn
             log.error("No Consent document found");
             throw new NoDataFoundException("No Consent document found");
         }
-
-        return detailedConsentDto;
     }
 
     private IQuery getConsentIQuery(Optional<String> patient, Optional<String> practitioner, Optional<String> status, Optional<Boolean> generalDesignation) {
@@ -367,11 +450,9 @@ private IQuery getConsentIQuery(Optional<String> patient, Optional<String> pract
             iQuery.where(new TokenClientParam("status").exactly().code("active"));
         } else {
             //query with practitioner.
-            practitioner.ifPresent(pr -> {
-                if (!getCareTeamIdsFromPractitioner(pr).isEmpty()) {
-                    iQuery.where(new ReferenceClientParam("actor").hasAnyOfIds(getCareTeamIdsFromPractitioner(pr)));
-                }
-            });
+            practitioner.map(this::getCareTeamIdsFromPractitioner)
+                    .filter(careTeamIds -> !careTeamIds.isEmpty())
+                    .ifPresent(careTeamIds -> iQuery.where(new ReferenceClientParam("actor").hasAnyOfIds(careTeamIds)));
 
             //query with patient.
             patient.ifPresent(pt -> iQuery.where(new ReferenceClientParam("patient").hasId(pt)));
@@ -379,11 +460,7 @@ private IQuery getConsentIQuery(Optional<String> patient, Optional<String> pract
             //Query with general designation.
             generalDesignation.ifPresent(gd -> {
                 if (gd) {
-                    String pseudoOrgId = getPseudoOrganization().getEntry().stream().findFirst().map(pseudoOrgEntry -> {
-                        Organization organization = (Organization) pseudoOrgEntry.getResource();
-                        return organization.getIdElement().getIdPart();
-                    }).get();
-                    iQuery.where(new ReferenceClientParam("actor").hasId(pseudoOrgId));
+                    iQuery.where(new ReferenceClientParam("actor").hasId(pseudoOrganizationResolver.getPseudoOrganizationId()));
                 }
             });
 
@@ -393,69 +470,93 @@ private IQuery getConsentIQuery(Optional<String> patient, Optional<String> pract
 
     @Override
     public void attestConsent(String consentId) {
+        log.info("Attest consent: Generating the attested PDF");
+        updateConsentStatusWithPdf(consentId, Consent.ConsentState.ACTIVE, "Active", "Attest Consent",
+                (detailedConsentDto, patientDto) -> consentPdfGenerator.generateConsentPdf(detailedConsentDto, patientDto, ConsentConstants.OPERATED_BY_PATIENT, Optional.empty()));
+    }
 
-        Consent consent = fhirClient.read().resource(Consent.class).withId(consentId.trim()).execute();
-        consent.setStatus(Consent.ConsentState.ACTIVE);
-
-        DetailedConsentDto detailedConsentDto = getConsentsById(consentId);
-        detailedConsentDto.setStatus("Active");
-
-        String patientID = detailedConsentDto.getPatient().getReference().replace("Patient/", "");
-        PatientDto patientDto = patientService.getPatientById(patientID, Optional.empty());
+    @Override
+    public void revokeConsent(String consentId) {
+        log.info("Revoke consent: Generating the Revocation PDF");
+        updateConsentStatusWithPdf(consentId, Consent.ConsentState.INACTIVE, "Inactive", "Revoke Consent",
+                (detailedConsentDto, patientDto) -> consentRevocationPdfGenerator.generateConsentRevocationPdf(detailedConsentDto, patientDto, ConsentConstants.OPERATED_BY_PATIENT, Optional.empty()));
+    }
 
+    /**
+     * Reads the consent once and uses it both for the PDF and for the update. The actors and the patient shown in the
+     * PDF and the profile of the updated consent are fetched concurrently, and the update only succeeds if the consent
+     * was not modified since it was read.
+     */
+    private void updateConsentStatusWithPdf(String consentId, Consent.ConsentState newState, String newStatusDisplay,
+                                            String actionAndResourceName, ConsentDocumentRenderer renderer) {
+        Consent consent = readConsent(consentId);
+        String versionId = consent.getIdElement().getVersionIdPart();
+
+        // The profile is resolved on a detached consent so the read consent is only touched by this thread
+        CompletableFuture<Consent> profileMetaData = CompletableFuture.supplyAsync(() -> {
+            Consent profiled = new Consent();
+            fhirProfileUtil.setConsentProfileMetaData(fhirClient, profiled);
+            return profiled;
+        }, fhirRequestExecutor);
+        ConsentDocumentModel documentModel = getConsentDocumentModel(consent);
+        documentModel.getDetailedConsentDto().setStatus(newStatusDisplay);
 
         try {
-            log.info("Attest consent: Generating the attested PDF");
-            byte[] pdfBytes = consentPdfGenerator.generateConsentPdf(detailedConsentDto, patientDto, ConsentConstants.OPERATED_BY_PATIENT, Optional.empty());
-            consent.setSource(addAttachment(pdfBytes));
-
+            consent.setSource(addAttachment(renderer.render(documentModel.getDetailedConsentDto(), documentModel.getPatientDto())));
         } catch (IOException e) {
             throw new ConsentPdfGenerationException(e);
         }
-        //consent.getSourceAttachment().getData();
+        consent.setStatus(newState);
         log.info("Updating consent: Saving the consent into the FHIR server.");
 
         //Set Profile Meta Data
-        FhirProfileUtil.setConsentProfileMetaData(fhirClient, consent);
+        Consent profiled = FutureUtil.join(profileMetaData);
+        if (profiled.hasMeta()) {
+            consent.setMeta(profiled.getMeta());
+        }
 
         //Validate
-        FhirOperationUtil.validateFhirResource(fhirValidator, consent, Optional.of(consentId), ResourceType.Consent.name(), "Attest Consent");
+        FhirOperationUtil.validateFhirResource(fhirValidator, consent, Optional.of(consentId), ResourceType.Consent.name(), actionAndResourceName);
 
         //Update
-        FhirOperationUtil.updateFhirResource(fhirClient, consent, "Attest Consent");
+        FhirOperationUtil.updateFhirResourceIfMatch(fhirClient, consent, versionId, actionAndResourceName);
     }
 
-    @Override
-    public void revokeConsent(String consentId) {
-
-        Consent consent = fhirClient.read().resource(Consent.class).withId(consentId.trim()).execute();
-        consent.setStatus(Consent.ConsentState.INACTIVE);
-
-        DetailedConsentDto detailedConsentDto = getConsentsById(consentId);
-        detailedConsentDto.setStatus("Inactive");
-
-        String patientID = detailedConsentDto.getPatient().getReference().replace("Patient/", "");
-        PatientDto patientDto = patientService.getPatientById(patientID, Optional.empty());
-
+    private Consent readConsent(String consentId) {
         try {
-            log.info("Revoke consent: Generating the Revocation PDF");
-            byte[] pdfBytes = consentRevocationPdfGenerator.generateConsentRevocationPdf(detailedConsentDto, patientDto, ConsentConstants.OPERATED_BY_PATIENT, Optional.empty());
-            consent.setSource(addAttachment(pdfBytes));
-
-        } catch (IOException e) {
-            throw new ConsentPdfGenerationException(e);
+            return fhirClient.read().resource(Consent.class).withId(consentId.trim()).execute();
+        } catch (ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException e) {
+            log.info("No consent was found for the given consentId:" + consentId);
+            throw new ResourceNotFoundException("No consent was found for the given consent ID:" + consentId);
         }
-        //consent.getSourceAttachment().getData();
-        log.info("Updating consent: Saving the consent into the FHIR server.");
+    }
 
-        //Set Profile Meta Data
-        FhirProfileUtil.setConsentProfileMetaData(fhirClient, consent);
+    /**
+     * Maps the consent to the model of its PDF, resolving its actors and its patient concurrently.
+     */
+    private ConsentDocumentModel getConsentDocumentModel(Consent consent) {
+        ConsentDto consentDto = mapConsentBundleEntryToConsentDto(new Bundle.BundleEntryComponent().setResource(consent));
+        String patientID = consentDto.getPatient().getReference().replace("Patient/", "");
+        List<String> actorReferences = Stream.concat(consentDto.getFromActor().stream(), consentDto.getToActor().stream())
+                .map(ReferenceDto::getReference)
+                .distinct()
+                .collect(toList());
 
-        //Validate
-        FhirOperationUtil.validateFhirResource(fhirValidator, consent, Optional.of(consentId), ResourceType.Consent.name(), "Revoke Consent");
+        CompletableFuture<PatientDto> patientDto = CompletableFuture.supplyAsync(() -> patientService.getPatientById(patientID, Optional.empty()), fhirRequestExecutor);
+        Map<String, AbstractCareTeamDto> actorsByReference = FhirResourceUtil.getActorsByReferences(actorReferences, fhirClient);
 
-        //Update
-        FhirOperationUtil.updateFhirResource(fhirClient, consent, "Revoke Consent");
+        DetailedConsentDto detailedConsentDto = convertConsentDtoToDetailedConsentDto(consentDto, actorsByReference);
+        detailedConsentDto.setSourceAttachmentLink(String.format(CONSENT_PDF_LINK_TEMPLATE, consent.getIdElement().getIdPart()));
+        return new ConsentDocumentModel(detailedConsentDto, FutureUtil.join(patientDto));
+    }
+
+    private byte[] getCachedConsentPdf(Consent consent, DetailedConsentDto detailedConsentDto, PatientDto patientDto) throws IOException {
+        String versionId = consent.getIdElement().hasVersionIdPart() ? consent.getIdElement().getVersionIdPart() : consent.getMeta().getVersionId();
+        return consentPdfCache.get(fhirClient.getServerBase(), consent.getIdElement().getIdPart(), versionId, ConsentConstants.CONSENT_PDF_TYPE,
+                detailedConsentDto, patientDto, () -> {
+                    log.info("Generating consent PDF");
+                    return consentPdfGenerator.generateConsentPdf(detailedConsentDto, patientDto, ConsentConstants.OPERATED_BY_PATIENT, Optional.empty());
+                });
     }
 
     private Attachment addAttachment(byte[] pdfBytes) {
@@ -468,13 +569,11 @@ private Attachment addAttachment(byte[] pdfBytes) {
 
     @Override
     public PdfDto createConsentPdf(String consentId) {
-        DetailedConsentDto detailedConsentDto = getConsentsById(consentId);
-        String patientID = detailedConsentDto.getPatient().getReference().replace("Patient/", "");
-        PatientDto patientDto = patientService.getPatientById(patientID, Optional.empty());
+        Consent consent = readConsent(consentId);
 
         try {
-            log.info("Generating consent PDF");
-            byte[] pdfBytes = consentPdfGenerator.generateConsentPdf(detailedConsentDto, patientDto, ConsentConstants.OPERATED_BY_PATIENT, Optional.empty());
+            ConsentDocumentModel documentModel = getConsentDocumentModel(consent);
+            byte[] pdfBytes = getCachedConsentPdf(consent, documentModel.getDetailedConsentDto(), documentModel.getPatientDto());
             return new PdfDto(pdfBytes);
 
         } catch (IOException e) {
@@ -482,6 +581,89 @@ public PdfDto createConsentPdf(String consentId) {
         }
     }
 
+    /**
+     * Writes the PDFs of the attested consents of the patient and/or the organization as a ZIP. The consents are read
+     * page by page. The PDF stored with a consent at attestation is written as is, since rendering it again would print
+     * the export date as signing date. The consents without one are rendered on the consent PDF render executor, and
+     * the PDFs are written as they complete, with at most two renders per thread pending. Actors and patients are looked up per page and the most recently used ones,
+     * up to a page size of each, are kept for the following pages, so the memory used does not grow with the export.
+     */
+    @Override
+    public void exportConsentPdfs(Optional<String> patient, Optional<String> organization, OutputStream outputStream) {
+        if (!patient.isPresent() && !organization.isPresent()) {
+            throw new PreconditionFailedException("A patient or an organization is required to export consent PDFs");
+        }
+        int pageSize = configProperties.getResourceSinglePageLimit();
+        IQuery consentQuery = fhirClient.search().forResource(Consent.class)
+                .where(new TokenClientParam("status").exactly().code("active"))
+                .count(pageSize);
+        patient.ifPresent(pt -> consentQuery.where(new ReferenceClientParam("patient").hasId(pt)));
+        organization.ifPresent(org -> consentQuery.where(new ReferenceClientParam("actor").hasId(ResourceType.Organization.name() + "/" + org)));
+        Bundle firstPage = (Bundle) FhirOperationUtil.setNoCacheControlDirective(consentQuery).returnBundle(Bundle.class).execute();
+
+        // Unresolvable actor references are kept as empty, so they are not searched again
+        Map<String, Optional<AbstractCareTeamDto>> recentActorsByReference = new LruMap<>(pageSize);
+        Map<String, CompletableFuture<PatientDto>> recentPatientsById = new LruMap<>(pageSize);
+        Iterator<Bundle.BundleEntryComponent> consentEntries = FhirOperationUtil.streamBundleEntries(firstPage, fhirClient, fhirRequestExecutor)
+                .filter(consentEntry -> ((Consent) consentEntry.getResource()).getStatus() != Consent.ConsentState.ENTEREDINERROR)
+                .iterator();
+
+        try (ConsentPdfArchiveWriter archive = new ConsentPdfArchiveWriter(outputStream, consentPdfRenderExecutor, consentPdfRenderExecutor.getMaxPoolSize() * 2)) {
+            while (consentEntries.hasNext()) {
+                List<Consent> consents = new ArrayList<>();
+                for (int read = 0; consentEntries.hasNext() && read < pageSize; read++) {
+                    Consent consent = (Consent) consentEntries.next().getResource();
+                    if (consent.hasSourceAttachment() && ((Attachment) consent.getSource()).hasData()) {
+                        byte[] pdfBytes = ((Attachment) consent.getSource()).getData();
+                        archive.add("consent-" + consent.getIdElement().getIdPart() + ".pdf", () -> pdfBytes);
+                    } else {
+                        consents.add(consent);
+                    }
+                }
+                List<ConsentDto> consentDtos = consents.stream()
+                        .map(consent -> mapConsentBundleEntryToConsentDto(new Bundle.BundleEntryComponent().setResource(consent)))
+                        .collect(toList());
+
+                // Only the actors not looked up recently are searched
+                Map<String, AbstractCareTeamDto> actorsByReference = new HashMap<>();
+                List<String> actorReferences = new ArrayList<>();
+                consentDtos.stream()
+                        .flatMap(consentDto -> Stream.concat(consentDto.getFromActor().stream(), consentDto.getToActor().stream()))
+                        .map(ReferenceDto::getReference)
+                        .distinct()
+                        .forEach(reference -> {
+                            Optional<AbstractCareTeamDto> recentActor = recentActorsByReference.get(reference);
+                            if (recentActor == null) {
+                                actorReferences.add(reference);
+                            } else {
+                                recentActor.ifPresent(actor -> actorsByReference.put(reference, actor));
+                            }
+                        });
+                if (!actorReferences.isEmpty()) {
+                    Map<String, AbstractCareTeamDto> resolvedActors = FhirResourceUtil.getActorsByReferences(actorReferences, fhirClient);
+                    actorsByReference.putAll(resolvedActors);
+                    actorReferences.forEach(reference -> recentActorsByReference.put(reference, Optional.ofNullable(resolvedActors.get(reference))));
+                }
+
+                for (int i = 0; i < consents.size(); i++) {
+                    Consent consent = consents.get(i);
+                    ConsentDto consentDto = consentDtos.get(i);
+                    DetailedConsentDto detailedConsentDto = convertConsentDtoToDetailedConsentDto(consentDto, actorsByReference);
+                    detailedConsentDto.setSourceAttachmentLink(String.format(CONSENT_PDF_LINK_TEMPLATE, consent.getIdElement().getIdPart()));
+                    String patientID = consentDto.getPatient().getReference().replace("Patient/", "");
+                    CompletableFuture<PatientDto> patientDto = recentPatientsById.computeIfAbsent(patientID,
+                            id -> CompletableFuture.supplyAsync(() -> patientService.getPatientById(id, Optional.empty()), fhirRequestExecutor));
+                    archive.add("consent-" + consent.getIdElement().getIdPart() + ".pdf",
+                            () -> getCachedConsentPdf(consent, detailedConsentDto, FutureUtil.join(patientDto)));
+                }
+            }
+            int consentCount = archive.finish();
+            log.info("Exported " + consentCount + " consent PDFs");
+        } catch (IOException e) {
+            throw new ConsentPdfGenerationException(e);
+        }
+    }
+
 
     private Consent consentDtoToConsent(Optional<String> consentId, ConsentDto consentDto) {
         Consent consent = new Consent();
@@ -551,22 +733,15 @@ private Consent consentDtoToConsent(Optional<String> consentId, ConsentDto conse
         List<Consent.ConsentActorComponent> actors = new ArrayList<>();
 
         //Get pseudo organization
-        Bundle organizationBundle = getPseudoOrganization();
-
-        organizationBundle.getEntry().stream().findAny().ifPresent(entry -> {
-            Organization organization = (Organization) entry.getResource();
-            ReferenceDto referenceDto = new ReferenceDto();
-            referenceDto.setReference("Organization/" + organization.getIdElement().getIdPart());
-            referenceDto.setDisplay(organization.getName());
-            consent.setOrganization(Collections.singletonList(FhirDtoUtil.mapReferenceDtoToReference(referenceDto)));
-
-            if (consentDto.isGeneralDesignation()) {
-                Consent.ConsentActorComponent fromActor = new Consent.ConsentActorComponent();
-                fromActor.setReference(FhirDtoUtil.mapReferenceDtoToReference(referenceDto))
-                        .setRole(FhirDtoUtil.convertValuesetDtoToCodeableConcept(FhirDtoUtil.convertCodeToValueSetDto(ConsentConstants.CONSENT_CUSTODIAN_CODE, lookUpService.getConsentSecurityRole())));
-                actors.add(fromActor);
-            }
-        });
+        ReferenceDto pseudoOrganizationReference = pseudoOrganizationResolver.getPseudoOrganizationReference();
+        consent.setOrganization(Collections.singletonList(FhirDtoUtil.mapReferenceDtoToReference(pseudoOrganizationReference)));
+
+        if (consentDto.isGeneralDesignation()) {
+            Consent.ConsentActorComponent fromActor = new Consent.ConsentActorComponent();
+            fromActor.setReference(FhirDtoUtil.mapReferenceDtoToReference(pseudoOrganizationReference))
+                    .setRole(FhirDtoUtil.convertValuesetDtoToCodeableConcept(FhirDtoUtil.convertCodeToValueSetDto(ConsentConstants.CONSENT_CUSTODIAN_CODE, lookUpService.getConsentSecurityRole())));
+            actors.add(fromActor);
+        }
 
         if (consentDto.isGeneralDesignation()) {
             //Adding To careTeams
@@ -649,16 +824,13 @@ private boolean isDuplicate(ConsentDto consentDto, Optional<String> consentId) {
         if (consentDto.isGeneralDesignation()) {
             Bundle consentBundle = fhirClient.search().forResource(Consent.class).where(new ReferenceClientParam("patient").hasId(consentDto.getPatient().getReference()))
                     .returnBundle(Bundle.class).execute();
+            String pseudoOrgRef = pseudoOrganizationResolver.getPseudoOrganizationReference().getReference();
             boolean checkFromBundle = consentBundle.getEntry().stream().anyMatch(consentBundleEntry -> {
                 Consent consent = (Consent) consentBundleEntry.getResource();
                 List<String> fromActor = getReferenceOfCareTeam(consent, ConsentConstants.CONSENT_CUSTODIAN_CODE);
 
-                Optional<String> pseudoOrgRef = getPseudoOrganization().getEntry().stream().findFirst().map(pseudoOrg -> {
-                    Organization organization = (Organization) pseudoOrg.getResource();
-                    return organization.getIdElement().getIdPart();
-                });
                 if ((fromActor.size() == 1)) {
-                    if (fromActor.stream().findFirst().get().equalsIgnoreCase("Organization/" + pseudoOrgRef)) {
+                    if (fromActor.stream().findFirst().get().equalsIgnoreCase(pseudoOrgRef)) {
                         return consentId.map(s -> !(s.equalsIgnoreCase(consent.getIdElement().getIdPart()))).orElse(true);
                     } else {
                         return false;
@@ -680,52 +852,6 @@ private List<String> getReferenceOfCareTeam(Consent consent, String code) {
                 .collect(toList());
     }
 
-    private Bundle getPseudoOrganization() {
-        Bundle pseudoOrg = fhirClient.search().forResource(Organization.class)
-                .where(new TokenClientParam("identifier").exactly().code(ConsentConstants.PSEUDO_ORGANIZATION_TAX_ID))
-                .returnBundle(Bundle.class)
-                .execute();
-        if (pseudoOrg == null || pseudoOrg.isEmpty()) {
-            //Create Pseudo Org
-            Organization org = new Organization();
-            org.setActive(true);
-            org.setName(ConsentConstants.PSEUDO_ORGANIZATION_TAX_ID);
-            Identifier id = new Identifier().setSystem("urn:oid:2.16.840.1.113883.4.4").setValue("530196960");
-            org.setIdentifier(Collections.singletonList(id));
-            ContactPoint phoneContactPoint = new ContactPoint().setRank(1).setSystem(ContactPoint.ContactPointSystem.valueOf("PHONE")).setValue("(240)2762827");
-            ContactPoint emailContactPoint = new ContactPoint().setRank(2).setSystem(ContactPoint.ContactPointSystem.valueOf("EMAIL")).setValue("Kenneth.Salyards@SAMHSA.hhs.gov");
-            org.setTelecom(Arrays.asList(phoneContactPoint, emailContactPoint));
-            Address add = new Address().setLine(Collections.singletonList(new StringType("5600 Fishers Lane"))).setCity("Rockville").setState("MD").setPostalCode("20857").setCountry("USA");
-            org.setAddress(Collections.singletonList(add));
-
-            //Set Profile Meta Data
-            FhirProfileUtil.setOrganizationProfileMetaData(fhirClient, org);
-
-            //Validate
-            FhirOperationUtil.validateFhirResource(fhirValidator, org, Optional.empty(), ResourceType.Organization.name(), "Create Pseudo Organization");
-
-            //Create
-            MethodOutcome serverResponse = FhirOperationUtil.createFhirResource(fhirClient, org, ResourceType.Organization.name());
-
-            // Add TO DO Activity Definition
-            ActivityDefinition activityDefinition = FhirResourceUtil.createToDoActivityDefinition(serverResponse.getId().getIdPart());
-
-            //Set Profile Meta Data
-            FhirProfileUtil.setActivityDefinitionProfileMetaData(fhirClient, activityDefinition);
-
-            //Validate
-            FhirOperationUtil.validateFhirResource(fhirValidator, activityDefinition, Optional.empty(), ResourceType.ActivityDefinition.name(), "Create ActivityDefinition (when creating Pseudo Organization)");
-
-            //Create TO DO Activity Definition
-            FhirOperationUtil.createFhirResource(fhirClient, activityDefinition, ResourceType.ActivityDefinition.name());
-            return fhirClient.search().forResource(Organization.class)
-                    .where(new TokenClientParam("identifier").exactly().code(ConsentConstants.PSEUDO_ORGANIZATION_TAX_ID))
-                    .returnBundle(Bundle.class)
-                    .execute();
-        }
-        return pseudoOrg;
-    }
-
     private List<String> getCareTeamIdsFromPractitioner(String practitioner) {
         IQuery careTeamQuery = fhirClient.search().forResource(CareTeam.class)
                 .where(new ReferenceClientParam("participant").hasId(practitioner));
@@ -739,38 +865,20 @@ private List<String> getCareTeamIdsFromPractitioner(String practitioner) {
 
     }
 
-    private DetailedConsentDto convertConsentDtoToDetailedConsentDto(ConsentDto consentDto) {
+    private DetailedConsentDto convertConsentDtoToDetailedConsentDto(ConsentDto consentDto, Map<String, AbstractCareTeamDto> actorsByReference) {
 
-        List<AbstractCareTeamDto> fromOrganizationActors = consentDto.getFromActor().stream().filter(ac -> ac.getReference().contains("Organization"))
-                .map(actor -> FhirResourceUtil.getOrganizationActors(Optional.empty(), Optional.empty(), Optional.of(actor.getReference().replace("Organization/", "")), Optional.empty(), fhirClient, configProperties)
-                        .stream().findAny().get()
-                ).collect(toList());
+        List<AbstractCareTeamDto> fromOrganizationActors = getActors(consentDto.getFromActor(), ResourceType.Organization, actorsByReference);
 
-        List<AbstractCareTeamDto> fromPractitionerActors = consentDto.getFromActor().stream().filter(ac -> ac.getReference().contains("Practitioner"))
-                .map(actor -> FhirResourceUtil.getPractitionerActors(Optional.empty(), Optional.empty(), Optional.of(actor.getReference().replace("Practitioner/", "")), Optional.empty(), fhirClient, configProperties)
-                        .stream().findAny().get()
-                ).collect(toList());
+        List<AbstractCareTeamDto> fromPractitionerActors = getActors(consentDto.getFromActor(), ResourceType.Practitioner, actorsByReference);
 
-        List<AbstractCareTeamDto> fromRelatedPersons = consentDto.getFromActor().stream().filter(ac -> ac.getReference().contains("RelatedPerson"))
-                .map(actor -> FhirResourceUtil.getRelatedPersonActors(Optional.empty(), Optional.empty(), Optional.of(actor.getReference().replace("RelatedPerson/", "")), Optional.empty(), fhirClient, configProperties)
-                        .stream().findAny().get()
-                ).collect(toList());
+        List<AbstractCareTeamDto> fromRelatedPersons = getActors(consentDto.getFromActor(), ResourceType.RelatedPerson, actorsByReference);
 
 
-        List<AbstractCareTeamDto> toOrganizationActors = consentDto.getToActor().stream().filter(ac -> ac.getReference().contains("Organization"))
-                .map(actor -> FhirResourceUtil.getOrganizationActors(Optional.empty(), Optional.empty(), Optional.of(actor.getReference().replace("Organization/", "")), Optional.empty(), fhirClient, configProperties)
-                        .stream().findAny().get()
-                ).collect(toList());
+        List<AbstractCareTeamDto> toOrganizationActors = getActors(consentDto.getToActor(), ResourceType.Organization, actorsByReference);
 
-        List<AbstractCareTeamDto> toPractitionerActors = consentDto.getToActor().stream().filter(ac -> ac.getReference().contains("Practitioner"))
-                .map(actor -> FhirResourceUtil.getPractitionerActors(Optional.empty(), Optional.empty(), Optional.of(actor.getReference().replace("Practitioner/", "")), Optional.empty(), fhirClient, configProperties)
-                        .stream().findAny().get()
-                ).collect(toList());
+        List<AbstractCareTeamDto> toPractitionerActors = getActors(consentDto.getToActor(), ResourceType.Practitioner, actorsByReference);
 
-        List<AbstractCareTeamDto> toRelatedPersons = consentDto.getToActor().stream().filter(ac -> ac.getReference().contains("RelatedPerson"))
-                .map(actor -> FhirResourceUtil.getRelatedPersonActors(Optional.empty(), Optional.empty(), Optional.of(actor.getReference().replace("RelatedPerson/", "")), Optional.empty(), fhirClient, configProperties)
-                        .stream().findAny().get()
-                ).collect(toList());
+        List<AbstractCareTeamDto> toRelatedPersons = getActors(consentDto.getToActor(), ResourceType.RelatedPerson, actorsByReference);
 
 
         List<ReferenceDto> toCareTeams = consentDto.getToActor().stream().filter(ac -> ac.getReference().contains("CareTeam")).collect(toList());
@@ -801,5 +909,27 @@ private DetailedConsentDto convertConsentDtoToDetailedConsentDto(ConsentDto cons
                 .build();
     }
 
+    private List<AbstractCareTeamDto> getActors(List<ReferenceDto> actors, ResourceType actorType, Map<String, AbstractCareTeamDto> actorsByReference) {
+        return actors.stream().filter(ac -> ac.getReference().contains(actorType.name()))
+                .map(actor -> {
+                    AbstractCareTeamDto abstractCareTeamDto = actorsByReference.get(actor.getReference());
+                    if (abstractCareTeamDto == null) {
+                        log.warn("No " + actorType.name() + " was found for the consent actor reference: " + actor.getReference());
+                    }
+                    return abstractCareTeamDto;
+                })
+                .filter(Objects::nonNull)
+                .collect(toList());
+    }
 
+    @FunctionalInterface
+    private interface ConsentDocumentRenderer {
+        byte[] render(DetailedConsentDto detailedConsentDto, PatientDto patientDto) throws IOException;
+    }
+
+    @Value
+    private static class ConsentDocumentModel {
+        DetailedConsentDto detailedConsentDto;
+        PatientDto patientDto;
+    }
 }
@@ -10,4 +10,5 @@ public interface LookUpService {
     List<ValueSetDto> getConsentSecurityLabel();
     List<ValueSetDto> getConsentSecurityRole();
     List<ValueSetDto> getConsentAction();
+    void evictCachedValueSets();
 }
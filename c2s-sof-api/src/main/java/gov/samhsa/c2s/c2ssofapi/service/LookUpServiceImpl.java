@@ -1,16 +1,26 @@
 package gov.samhsa.c2s.c2ssofapi.service;
 
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import gov.samhsa.c2s.c2ssofapi.config.ConfigProperties;
+import gov.samhsa.c2s.c2ssofapi.config.FhirAccessTokenContext;
+import gov.samhsa.c2s.c2ssofapi.config.FhirClientRegistry;
 import gov.samhsa.c2s.c2ssofapi.service.dto.LookupPathUrls;
 import gov.samhsa.c2s.c2ssofapi.service.dto.ValueSetDto;
 import gov.samhsa.c2s.c2ssofapi.service.exception.ResourceNotFoundException;
 import gov.samhsa.c2s.c2ssofapi.service.util.LookUpUtil;
+import gov.samhsa.c2s.c2ssofapi.service.util.RefreshingCache;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.hl7.fhir.dstu3.model.ValueSet;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 
@@ -20,56 +30,93 @@ public class LookUpServiceImpl implements LookUpService {
 
     private final IGenericClient fhirClient;
 
-    public LookUpServiceImpl(IGenericClient fhirClient) {
+    private final FhirClientRegistry fhirClientRegistry;
+
+    private final ConfigProperties configProperties;
+
+    private final RefreshingCache<LookUpCacheKey, List<ValueSetDto>> valueSetCache;
+
+    public LookUpServiceImpl(IGenericClient fhirClient, FhirClientRegistry fhirClientRegistry, ConfigProperties configProperties,
+                             @Qualifier("lookUpRefreshExecutor") Executor lookUpRefreshExecutor) {
         this.fhirClient = fhirClient;
+        this.fhirClientRegistry = fhirClientRegistry;
+        this.configProperties = configProperties;
+        ConfigProperties.LookUp.Cache cache = configProperties.getLookUp().getCache();
+        this.valueSetCache = new RefreshingCache<>(Duration.ofSeconds(cache.getTimeToLiveInSeconds()),
+                Duration.ofSeconds(cache.getRefreshAfterInSeconds()), lookUpRefreshExecutor,
+                configProperties.getFhir().getMaxServers() * LookupPathUrls.values().length);
     }
 
     @Override
     public List<ValueSetDto> getConsentStateCodes() {
-        return getValueSetsByValueSetExpansion(LookupPathUrls.CONSENT_STATE_CODE.getUrlPath(), LookupPathUrls.CONSENT_STATE_CODE.getType());
+        return getCachedValueSets(LookupPathUrls.CONSENT_STATE_CODE, client -> getValueSetsByValueSetExpansion(client, LookupPathUrls.CONSENT_STATE_CODE.getUrlPath(), LookupPathUrls.CONSENT_STATE_CODE.getType()));
     }
 
     @Override
     public List<ValueSetDto> getConsentPurposeOfUse() {
-        return getValueSetsByValueSetCompose(LookupPathUrls.PURPOSE_OF_USE.getUrlPath(), LookupPathUrls.PURPOSE_OF_USE.getType());
+        return getCachedValueSets(LookupPathUrls.PURPOSE_OF_USE, client -> getValueSetsByValueSetCompose(client, LookupPathUrls.PURPOSE_OF_USE.getUrlPath(), LookupPathUrls.PURPOSE_OF_USE.getType()));
     }
 
     @Override
     public List<ValueSetDto> getConsentSecurityLabel() {
-        return getValueSetsByValueSetCompose(LookupPathUrls.SECURITY_LABEL.getUrlPath(), LookupPathUrls.SECURITY_LABEL.getType());
+        return getCachedValueSets(LookupPathUrls.SECURITY_LABEL, client -> getValueSetsByValueSetCompose(client, LookupPathUrls.SECURITY_LABEL.getUrlPath(), LookupPathUrls.SECURITY_LABEL.getType()));
     }
 
     @Override
     public List<ValueSetDto> getConsentSecurityRole() {
-        List<ValueSetDto> securityRoleList = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.CONSENT_SECURITY_ROLE.getUrlPath(), LookupPathUrls.CONSENT_SECURITY_ROLE.getType());
-        if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.CONSENT_SECURITY_ROLE.getType())) {
-            List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
-            securityRoleList = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(Collectors.toList());
-        }
-        LookUpUtil.sortValueSets(securityRoleList);
-        log.info("Found " + securityRoleList.size() + " security role.");
-        return securityRoleList;
+        return getCachedValueSets(LookupPathUrls.CONSENT_SECURITY_ROLE, client -> {
+            List<ValueSetDto> securityRoleList = new ArrayList<>();
+            ValueSet response = getValueSets(client, LookupPathUrls.CONSENT_SECURITY_ROLE.getUrlPath(), LookupPathUrls.CONSENT_SECURITY_ROLE.getType());
+            if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.CONSENT_SECURITY_ROLE.getType())) {
+                List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
+                securityRoleList = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(Collectors.toList());
+            }
+            LookUpUtil.sortValueSets(securityRoleList);
+            log.info("Found " + securityRoleList.size() + " security role.");
+            return securityRoleList;
+        });
     }
 
     @Override
     public List<ValueSetDto> getConsentAction() {
-        List<ValueSetDto> consentActionList = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.CONSENT_ACTION.getUrlPath(), LookupPathUrls.CONSENT_ACTION.getType());
-        if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.CONSENT_ACTION.getType())) {
-            List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
-            consentActionList = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(Collectors.toList());
+        return getCachedValueSets(LookupPathUrls.CONSENT_ACTION, client -> {
+            List<ValueSetDto> consentActionList = new ArrayList<>();
+            ValueSet response = getValueSets(client, LookupPathUrls.CONSENT_ACTION.getUrlPath(), LookupPathUrls.CONSENT_ACTION.getType());
+            if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.CONSENT_ACTION.getType())) {
+                List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
+                consentActionList = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(Collectors.toList());
+            }
+            LookUpUtil.sortValueSets(consentActionList);
+            log.info("Found " + consentActionList.size() + " consent Action.");
+            return consentActionList;
+        });
+    }
+
+    @Override
+    public void evictCachedValueSets() {
+        String serverBase = fhirClient.getServerBase();
+        valueSetCache.invalidateIf(key -> key.getServerBase().equals(serverBase));
+        log.info("Evicted cached look up values for " + serverBase);
+    }
+
+    private List<ValueSetDto> getCachedValueSets(LookupPathUrls lookupPathUrl, Function<IGenericClient, List<ValueSetDto>> loader) {
+        if (!configProperties.getLookUp().getCache().isEnabled()) {
+            return loader.apply(fhirClient);
         }
-        LookUpUtil.sortValueSets(consentActionList);
-        log.info("Found " + consentActionList.size() + " consent Action.");
-        return consentActionList;
+        // The loader may run on the refresh executor after the request has completed, so it uses the shared
+        // client of the server with the caller's token bound explicitly instead of the request scoped proxy
+        String serverBase = fhirClient.getServerBase();
+        IGenericClient sharedClient = fhirClientRegistry.getClient(serverBase);
+        String accessToken = FhirAccessTokenContext.getAccessToken().orElse(null);
+        return valueSetCache.get(new LookUpCacheKey(serverBase, lookupPathUrl), () ->
+                FhirAccessTokenContext.callWithAccessToken(accessToken, () -> Collections.unmodifiableList(loader.apply(sharedClient))));
     }
 
-    private ValueSet getValueSets(String urlPath, String type) {
+    private ValueSet getValueSets(IGenericClient client, String urlPath, String type) {
         ValueSet response;
-        String url = fhirClient.getServerBase() + urlPath;
+        String url = client.getServerBase() + urlPath;
         try {
-            response = (ValueSet) fhirClient.search().byUrl(url).execute();
+            response = (ValueSet) client.search().byUrl(url).execute();
         } catch (ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException e) {
             log.error("Query was unsuccessful - Could not find any " + type + " code", e.getMessage());
             throw new ResourceNotFoundException("Query was unsuccessful - Could not find any " + type + " code", e);
@@ -77,9 +124,9 @@ private ValueSet getValueSets(String urlPath, String type) {
         return response;
     }
 
-    private List<ValueSetDto> getValueSetsByValueSetExpansion(String urlPath, String type) {
+    private List<ValueSetDto> getValueSetsByValueSetExpansion(IGenericClient client, String urlPath, String type) {
         List<ValueSetDto> valueSets;
-        ValueSet response = getValueSets(urlPath, type);
+        ValueSet response = getValueSets(client, urlPath, type);
         List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
         valueSets = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(Collectors.toList());
         LookUpUtil.sortValueSets(valueSets);
@@ -87,9 +134,9 @@ private List<ValueSetDto> getValueSetsByValueSetExpansion(String urlPath, String
         return valueSets;
     }
 
-    private List<ValueSetDto> getValueSetsByValueSetCompose(String urlPath, String type) {
+    private List<ValueSetDto> getValueSetsByValueSetCompose(IGenericClient client, String urlPath, String type) {
         List<ValueSetDto> valueSets = new ArrayList<>();
-        ValueSet response = getValueSets(urlPath, type);
+        ValueSet response = getValueSets(client, urlPath, type);
         List<ValueSet.ConceptSetComponent> valueSetList = response.getCompose().getInclude();
         for (ValueSet.ConceptSetComponent conceptComponent : valueSetList) {
             String codingSystemUrl = conceptComponent.getSystem();
@@ -101,4 +148,10 @@ private List<ValueSetDto> getValueSetsByValueSetCompose(String urlPath, String t
         log.info("Found " + valueSets.size() + type + ".");
         return valueSets;
     }
+
+    @Value
+    private static class LookUpCacheKey {
+        String serverBase;
+        LookupPathUrls lookupPathUrl;
+    }
 }
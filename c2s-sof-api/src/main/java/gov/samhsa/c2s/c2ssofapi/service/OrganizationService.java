@@ -16,4 +16,6 @@ public interface OrganizationService {
     PageDto<OrganizationDto> searchOrganizations(Optional<OrganizationController.SearchType> searchType, Optional<String> searchValue, Optional<Boolean> showInactive, Optional<Integer> page, Optional<Integer> size, Optional<Boolean> showAll);
 
     List<OrganizationDto> getOrganizationsByPractitionerId(String practitionerId);
+
+    void evictCachedPseudoOrganization();
 }
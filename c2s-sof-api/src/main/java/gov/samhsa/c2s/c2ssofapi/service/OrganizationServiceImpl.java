@@ -19,11 +19,13 @@
 import org.hl7.fhir.dstu3.model.ResourceType;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 
 import static ca.uhn.fhir.rest.api.Constants.PARAM_LASTUPDATED;
 import static java.util.stream.Collectors.toList;
@@ -35,12 +37,18 @@ public class OrganizationServiceImpl implements OrganizationService {
     private final ModelMapper modelMapper;
     private final IGenericClient fhirClient;
     private final ConfigProperties configProperties;
+    private final Executor fhirRequestExecutor;
+    private final PseudoOrganizationResolver pseudoOrganizationResolver;
 
     @Autowired
-    public OrganizationServiceImpl(ModelMapper modelMapper, IGenericClient fhirClient, ConfigProperties configProperties) {
+    public OrganizationServiceImpl(ModelMapper modelMapper, IGenericClient fhirClient, ConfigProperties configProperties,
+                                   @Qualifier("fhirRequestExecutor") Executor fhirRequestExecutor,
+                                   PseudoOrganizationResolver pseudoOrganizationResolver) {
         this.modelMapper = modelMapper;
         this.fhirClient = fhirClient;
         this.configProperties = configProperties;
+        this.fhirRequestExecutor = fhirRequestExecutor;
+        this.pseudoOrganizationResolver = pseudoOrganizationResolver;
     }
 
     @Override
@@ -175,7 +183,7 @@ public List<OrganizationDto> getOrganizationsByPractitionerId(String practitione
                 .sort().descending(PARAM_LASTUPDATED)
                 .returnBundle(Bundle.class).execute();
         if (bundle != null) {
-            organizations = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, configProperties)
+            organizations = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, configProperties, fhirRequestExecutor)
                     .stream()
                     .filter(it -> it.getResource().getResourceType().equals(ResourceType.PractitionerRole))
                     .map(it -> (PractitionerRole) it.getResource())
@@ -192,7 +200,7 @@ public List<OrganizationDto> getOrganizationsByPractitionerId(String practitione
     }
 
     private List<OrganizationDto> convertAllBundleToSingleOrganizationDtoList(Bundle firstPageOrganizationSearchBundle, int numberOBundlePerPage) {
-        return FhirOperationUtil.getAllBundleComponentsAsList(firstPageOrganizationSearchBundle, Optional.of(numberOBundlePerPage), fhirClient, configProperties)
+        return FhirOperationUtil.getAllBundleComponentsAsList(firstPageOrganizationSearchBundle, Optional.of(numberOBundlePerPage), fhirClient, configProperties, fhirRequestExecutor)
                 .stream()
                 .map(retrievedOrganization -> {
                     OrganizationDto organizationDto = modelMapper.map(retrievedOrganization.getResource(), OrganizationDto.class);
@@ -201,4 +209,9 @@ private List<OrganizationDto> convertAllBundleToSingleOrganizationDtoList(Bundle
                 })
                 .collect(toList());
     }
+
+    @Override
+    public void evictCachedPseudoOrganization() {
+        pseudoOrganizationResolver.evict();
+    }
 }
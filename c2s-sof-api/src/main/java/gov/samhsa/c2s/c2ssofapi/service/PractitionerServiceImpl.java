@@ -18,11 +18,13 @@
 import org.hl7.fhir.dstu3.model.ResourceType;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 
 import static ca.uhn.fhir.rest.api.Constants.PARAM_LASTUPDATED;
 import static java.util.stream.Collectors.toList;
@@ -41,6 +43,10 @@ public class PractitionerServiceImpl implements PractitionerService {
     @Autowired
     private ConfigProperties configProperties;
 
+    @Autowired
+    @Qualifier("fhirRequestExecutor")
+    private Executor fhirRequestExecutor;
+
     @Override
     public PractitionerDto getPractitioner(String practitionerId) {
         Bundle practitionerBundle = fhirClient.search().forResource(Practitioner.class)
@@ -152,7 +158,7 @@ public PageDto<PractitionerDto> getPractitioners(Optional<Integer> pageNumber, O
     }
 
     private List<PractitionerDto> convertAllBundleToSinglePractitionerDtoList(Bundle firstPageSearchBundle, int numberOfBundlePerPage) {
-        List<Bundle.BundleEntryComponent> bundleEntryComponents = FhirOperationUtil.getAllBundleComponentsAsList(firstPageSearchBundle, Optional.of(numberOfBundlePerPage), fhirClient, configProperties);
+        List<Bundle.BundleEntryComponent> bundleEntryComponents = FhirOperationUtil.getAllBundleComponentsAsList(firstPageSearchBundle, Optional.of(numberOfBundlePerPage), fhirClient, configProperties, fhirRequestExecutor);
         return bundleEntryComponents.stream().filter(pr -> pr.getResource().getResourceType().equals(ResourceType.Practitioner))
                 .map(prac -> this.covertEntryComponentToPractitioner(prac, bundleEntryComponents)).collect(toList());
     }
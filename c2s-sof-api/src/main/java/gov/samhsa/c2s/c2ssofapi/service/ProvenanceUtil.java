@@ -1,6 +1,5 @@
 package gov.samhsa.c2s.c2ssofapi.service;
 
-import ca.uhn.fhir.rest.client.api.IGenericClient;
 import gov.samhsa.c2s.c2ssofapi.constants.ProvenanceConstants;
 import gov.samhsa.c2s.c2ssofapi.service.constant.ProvenanceActivityEnum;
 import gov.samhsa.c2s.c2ssofapi.service.util.FhirResourceUtil;
@@ -19,13 +18,17 @@
 @Service
 public class ProvenanceUtil {
 
-    private final IGenericClient fhirClient;
+    private final ProvenanceWriter provenanceWriter;
 
-    public ProvenanceUtil(IGenericClient fhirClient) {
-        this.fhirClient = fhirClient;
+    public ProvenanceUtil(ProvenanceWriter provenanceWriter) {
+        this.provenanceWriter = provenanceWriter;
     }
 
     public void createProvenance(List<String> idList, ProvenanceActivityEnum provenanceActivityEnum, Optional<String> loggedInUser) {
+        provenanceWriter.write(buildProvenance(idList, provenanceActivityEnum, loggedInUser));
+    }
+
+    public Provenance buildProvenance(List<String> idList, ProvenanceActivityEnum provenanceActivityEnum, Optional<String> loggedInUser) {
         Provenance provenance = new Provenance();
 
         //target
@@ -59,6 +62,6 @@ public void createProvenance(List<String> idList, ProvenanceActivityEnum provena
             provenance.setAgent(Collections.singletonList(agent));
         }
 
-        fhirClient.create().resource(provenance).execute();
+        return provenance;
     }
 }
@@ -0,0 +1,196 @@
+package gov.samhsa.c2s.c2ssofapi.service;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import gov.samhsa.c2s.c2ssofapi.config.ConfigProperties;
+import gov.samhsa.c2s.c2ssofapi.config.FhirAccessTokenContext;
+import gov.samhsa.c2s.c2ssofapi.config.FhirClientRegistry;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.Provenance;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes Provenance resources to the FHIR server, on the caller's thread by default so that a failed write fails
+ * the request. With asynchronous writing enabled, records are queued in a bounded queue and flushed by a single
+ * worker as FHIR batch bundles, one per FHIR server and access token. A batch is only retried when it was not
+ * processed, i.e. when the connection failed or the server answered with an error status, since the records are
+ * not idempotent. Records that cannot be written are then only logged as errors, with the number lost since
+ * startup. When the queue is full the record is written on the caller's thread instead, so audit records are never
+ * dropped because of load. Queued records are flushed before the application shuts down.
+ */
+@Service
+@Slf4j
+public class ProvenanceWriter {
+
+    private static final long POLL_INTERVAL_IN_MS = 200;
+
+    private final IGenericClient fhirClient;
+
+    private final FhirClientRegistry fhirClientRegistry;
+
+    private final ConfigProperties.ProvenanceWriter config;
+
+    private final BlockingQueue<PendingProvenance> queue;
+
+    private final Thread worker;
+
+    private volatile boolean running = true;
+
+    private final AtomicLong failed = new AtomicLong();
+
+    public ProvenanceWriter(IGenericClient fhirClient, FhirClientRegistry fhirClientRegistry, ConfigProperties configProperties) {
+        this.fhirClient = fhirClient;
+        this.fhirClientRegistry = fhirClientRegistry;
+        this.config = configProperties.getProvenanceWriter();
+        this.queue = new LinkedBlockingQueue<>(config.getQueueCapacity());
+        this.worker = new Thread(this::run, "provenance-writer");
+        this.worker.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (config.isAsyncEnabled()) {
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues the provenance for the FHIR server of the current request, or writes it right away when
+     * asynchronous writing is disabled, the writer is shutting down or the queue is full.
+     */
+    public void write(Provenance provenance) {
+        PendingProvenance pending = new PendingProvenance(fhirClient.getServerBase(),
+                FhirAccessTokenContext.getAccessToken().orElse(null), provenance);
+        if (config.isAsyncEnabled() && running) {
+            if (queue.offer(pending)) {
+                return;
+            }
+            log.warn("Provenance queue is full (" + config.getQueueCapacity() + "), writing on the caller thread");
+        }
+        fhirClient.create().resource(provenance).execute();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (!worker.isAlive()) {
+            return;
+        }
+        log.info("Draining " + queue.size() + " queued provenance records");
+        worker.join(config.getDrainTimeoutInMs());
+        if (worker.isAlive()) {
+            worker.interrupt();
+            log.warn("Provenance writer did not drain within " + config.getDrainTimeoutInMs() + " ms, " + queue.size() + " records were not written");
+        }
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingProvenance first = queue.poll(POLL_INTERVAL_IN_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<PendingProvenance> drained = new ArrayList<>();
+                drained.add(first);
+                queue.drainTo(drained, config.getBatchSize() - 1);
+
+                Map<Destination, List<Provenance>> batches = new LinkedHashMap<>();
+                drained.forEach(pending -> batches.computeIfAbsent(pending.getDestination(), destination -> new ArrayList<>())
+                        .add(pending.getProvenance()));
+                for (Map.Entry<Destination, List<Provenance>> batch : batches.entrySet()) {
+                    writeBatch(batch.getKey(), batch.getValue());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Unexpected error in the provenance writer", e);
+            }
+        }
+    }
+
+    private void writeBatch(Destination destination, List<Provenance> provenances) throws InterruptedException {
+        Bundle bundle = new Bundle().setType(Bundle.BundleType.BATCH);
+        provenances.forEach(provenance -> bundle.addEntry()
+                .setResource(provenance)
+                .getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl(ResourceType.Provenance.name()));
+        IGenericClient client = fhirClientRegistry.getClient(destination.getServerBase());
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Bundle response = FhirAccessTokenContext.callWithAccessToken(destination.getAccessToken(),
+                        () -> client.transaction().withBundle(bundle).execute());
+                long rejected = response.getEntry().stream()
+                        .filter(entry -> entry.getResponse().getStatus() == null || !entry.getResponse().getStatus().startsWith("2"))
+                        .count();
+                if (rejected > 0) {
+                    log.error(rejected + " of " + provenances.size() + " provenance records were rejected by " + destination.getServerBase()
+                            + ", " + failed.addAndGet(rejected) + " provenance records lost since startup");
+                }
+                return;
+            } catch (RuntimeException e) {
+                if (!isRetryable(e) || attempt >= config.getMaxAttempts()) {
+                    log.error("Failed to write " + provenances.size() + " provenance records to " + destination.getServerBase()
+                            + " after " + attempt + " attempts, " + failed.addAndGet(provenances.size()) + " provenance records lost since startup", e);
+                    return;
+                }
+                log.warn("Failed to write provenance batch to " + destination.getServerBase() + " (attempt " + attempt + "), retrying: " + e.getMessage());
+                Thread.sleep(config.getRetryDelayInMs() * attempt);
+            }
+        }
+    }
+
+    // A read timeout or a gateway timeout may come after the server stored the batch, retrying it would duplicate the records
+    private static boolean isRetryable(RuntimeException e) {
+        if (e instanceof BaseServerResponseException) {
+            int status = ((BaseServerResponseException) e).getStatusCode();
+            return status >= 500 && status != 504;
+        }
+        if (e instanceof FhirClientConnectionException) {
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof ConnectException || cause instanceof ConnectTimeoutException
+                        || cause instanceof NoRouteToHostException || cause instanceof UnknownHostException) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Value
+    private static class Destination {
+        String serverBase;
+        String accessToken;
+    }
+
+    @Value
+    private static class PendingProvenance {
+        Destination destination;
+        Provenance provenance;
+
+        PendingProvenance(String serverBase, String accessToken, Provenance provenance) {
+            this.destination = new Destination(serverBase, accessToken);
+            this.provenance = provenance;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package gov.samhsa.c2s.c2ssofapi.service;
+
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.TokenClientParam;
+import ca.uhn.fhir.validation.FhirValidator;
+import gov.samhsa.c2s.c2ssofapi.config.ConfigProperties;
+import gov.samhsa.c2s.c2ssofapi.constants.ConsentConstants;
+import gov.samhsa.c2s.c2ssofapi.service.dto.ReferenceDto;
+import gov.samhsa.c2s.c2ssofapi.service.util.FhirOperationUtil;
+import gov.samhsa.c2s.c2ssofapi.service.util.FhirProfileUtil;
+import gov.samhsa.c2s.c2ssofapi.service.util.FhirResourceUtil;
+import gov.samhsa.c2s.c2ssofapi.service.util.RefreshingCache;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.dstu3.model.ActivityDefinition;
+import org.hl7.fhir.dstu3.model.Address;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.ContactPoint;
+import org.hl7.fhir.dstu3.model.Identifier;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.hl7.fhir.dstu3.model.StringType;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+/**
+ * Resolves the pseudo organization used as the "from" actor of general designation consents.
+ * The organization (and its To-Do ActivityDefinition) is looked up or created once per FHIR server
+ * and then served from memory; concurrent first requests for the same server share one resolution.
+ */
+@Service
+@Slf4j
+public class PseudoOrganizationResolver {
+
+    private final IGenericClient fhirClient;
+
+    private final FhirValidator fhirValidator;
+
+    private final FhirProfileUtil fhirProfileUtil;
+
+    private final RefreshingCache<String, ReferenceDto> pseudoOrganizations;
+
+    public PseudoOrganizationResolver(IGenericClient fhirClient, FhirValidator fhirValidator, FhirProfileUtil fhirProfileUtil,
+                                      ConfigProperties configProperties) {
+        this.fhirClient = fhirClient;
+        this.fhirValidator = fhirValidator;
+        this.fhirProfileUtil = fhirProfileUtil;
+        this.pseudoOrganizations = new RefreshingCache<>(configProperties.getFhir().getMaxServers());
+    }
+
+    /**
+     * Returns a reference to the pseudo organization of the current FHIR server, with the organization name as display.
+     */
+    public ReferenceDto getPseudoOrganizationReference() {
+        ReferenceDto cached = pseudoOrganizations.get(fhirClient.getServerBase(), this::findOrCreatePseudoOrganization);
+        return new ReferenceDto(cached.getReference(), cached.getDisplay());
+    }
+
+    public String getPseudoOrganizationId() {
+        return getPseudoOrganizationReference().getReference().replace(ResourceType.Organization.name() + "/", "");
+    }
+
+    /**
+     * Forgets the pseudo organization of the current FHIR server, e.g. after it was deleted or replaced on the server.
+     */
+    public void evict() {
+        pseudoOrganizations.invalidate(fhirClient.getServerBase());
+        log.info("Evicted the cached pseudo organization of " + fhirClient.getServerBase());
+    }
+
+    private ReferenceDto findOrCreatePseudoOrganization() {
+        Bundle pseudoOrg = fhirClient.search().forResource(Organization.class)
+                .where(new TokenClientParam("identifier").exactly().code(ConsentConstants.PSEUDO_ORGANIZATION_TAX_ID))
+                .returnBundle(Bundle.class)
+                .execute();
+        if (pseudoOrg != null && !pseudoOrg.getEntry().isEmpty()) {
+            Organization organization = (Organization) pseudoOrg.getEntry().get(0).getResource();
+            return toReferenceDto(organization.getIdElement().getIdPart(), organization.getName());
+        }
+
+        log.info("Pseudo organization not found in " + fhirClient.getServerBase() + ", creating it");
+        //Create Pseudo Org
+        Organization org = new Organization();
+        org.setActive(true);
+        org.setName(ConsentConstants.PSEUDO_ORGANIZATION_TAX_ID);
+        Identifier id = new Identifier().setSystem("urn:oid:2.16.840.1.113883.4.4").setValue(ConsentConstants.PSEUDO_ORGANIZATION_TAX_ID);
+        org.setIdentifier(Collections.singletonList(id));
+        ContactPoint phoneContactPoint = new ContactPoint().setRank(1).setSystem(ContactPoint.ContactPointSystem.valueOf("PHONE")).setValue("(240)2762827");
+        ContactPoint emailContactPoint = new ContactPoint().setRank(2).setSystem(ContactPoint.ContactPointSystem.valueOf("EMAIL")).setValue("Kenneth.Salyards@SAMHSA.hhs.gov");
+        org.setTelecom(Arrays.asList(phoneContactPoint, emailContactPoint));
+        Address add = new Address().setLine(Collections.singletonList(new StringType("5600 Fishers Lane"))).setCity("Rockville").setState("MD").setPostalCode("20857").setCountry("USA");
+        org.setAddress(Collections.singletonList(add));
+
+        //Set Profile Meta Data
+        fhirProfileUtil.setOrganizationProfileMetaData(fhirClient, org);
+
+        //Validate
+        FhirOperationUtil.validateFhirResource(fhirValidator, org, Optional.empty(), ResourceType.Organization.name(), "Create Pseudo Organization");
+
+        //Create
+        MethodOutcome serverResponse = FhirOperationUtil.createFhirResource(fhirClient, org, ResourceType.Organization.name());
+        String organizationId = serverResponse.getId().getIdPart();
+
+        // Add TO DO Activity Definition
+        ActivityDefinition activityDefinition = FhirResourceUtil.createToDoActivityDefinition(organizationId);
+
+        //Set Profile Meta Data
+        fhirProfileUtil.setActivityDefinitionProfileMetaData(fhirClient, activityDefinition);
+
+        //Validate
+        FhirOperationUtil.validateFhirResource(fhirValidator, activityDefinition, Optional.empty(), ResourceType.ActivityDefinition.name(), "Create ActivityDefinition (when creating Pseudo Organization)");
+
+        //Create TO DO Activity Definition
+        FhirOperationUtil.createFhirResource(fhirClient, activityDefinition, ResourceType.ActivityDefinition.name());
+
+        return toReferenceDto(organizationId, org.getName());
+    }
+
+    private ReferenceDto toReferenceDto(String organizationId, String name) {
+        return new ReferenceDto(ResourceType.Organization.name() + "/" + organizationId, name);
+    }
+}
@@ -0,0 +1,8 @@
+package gov.samhsa.c2s.c2ssofapi.service.dto;
+
+/**
+ * FULL inlines the consent PDF into each listed consent; SUMMARY leaves it out and only returns the link to it.
+ */
+public enum ConsentProjection {
+    FULL, SUMMARY
+}
@@ -54,4 +54,6 @@ public class DetailedConsentDto {
     private ConsentMedicalInfoType consentMedicalInfoType;
 
     private byte[] sourceAttachment;
+
+    private String sourceAttachmentLink;
 }
@@ -0,0 +1,148 @@
+package gov.samhsa.c2s.c2ssofapi.service.pdf;
+
+import lombok.Value;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes PDFs rendered on an executor into a ZIP stream, in the order the renders complete. At most the given number
+ * of renders are pending, adding another one first writes a completed PDF, so the memory used does not grow with
+ * the number of PDFs. PDF content is already compressed, the entries are stored as is.
+ * The stream is left open.
+ */
+public class ConsentPdfArchiveWriter implements Closeable {
+
+    private final AbortableZipOutputStream zipOutputStream;
+
+    private final CompletionService<RenderedPdf> renders;
+
+    private final int maxPendingRenders;
+
+    private final List<Future<RenderedPdf>> pendingRenders = new ArrayList<>();
+
+    private int entryCount;
+
+    private boolean finished;
+
+    public ConsentPdfArchiveWriter(OutputStream outputStream, Executor renderExecutor, int maxPendingRenders) {
+        this.zipOutputStream = new AbortableZipOutputStream(new CloseShieldOutputStream(outputStream));
+        this.renders = new ExecutorCompletionService<>(renderExecutor);
+        this.maxPendingRenders = maxPendingRenders;
+    }
+
+    /**
+     * Renders the PDF of the entry on the executor, waiting for a pending render to complete and writing it
+     * when the maximum number of renders is pending.
+     */
+    public void add(String entryName, ConsentPdfCache.PdfRenderer renderer) throws IOException {
+        while (pendingRenders.size() >= maxPendingRenders) {
+            writeNextCompleted();
+        }
+        pendingRenders.add(renders.submit(() -> new RenderedPdf(entryName, renderer.render())));
+    }
+
+    /**
+     * Writes the pending PDFs as they complete and finishes the archive.
+     *
+     * @return the number of PDFs in the archive
+     */
+    public int finish() throws IOException {
+        while (!pendingRenders.isEmpty()) {
+            writeNextCompleted();
+        }
+        zipOutputStream.finish();
+        finished = true;
+        return entryCount;
+    }
+
+    /**
+     * Cancels the renders that are still pending, e.g. after a render failed. An archive that was not finished is
+     * left without its central directory, so clients cannot mistake it for a complete one.
+     */
+    @Override
+    public void close() throws IOException {
+        pendingRenders.forEach(render -> render.cancel(true));
+        pendingRenders.clear();
+        if (finished) {
+            zipOutputStream.close();
+        } else {
+            zipOutputStream.abort();
+        }
+    }
+
+    private void writeNextCompleted() throws IOException {
+        Future<RenderedPdf> completed;
+        try {
+            completed = renders.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering the consent PDFs", e);
+        }
+        pendingRenders.remove(completed);
+        write(getRenderedPdf(completed));
+    }
+
+    private void write(RenderedPdf renderedPdf) throws IOException {
+        byte[] pdf = renderedPdf.getPdf();
+        CRC32 crc = new CRC32();
+        crc.update(pdf);
+        ZipEntry entry = new ZipEntry(renderedPdf.getEntryName());
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(pdf.length);
+        entry.setCompressedSize(pdf.length);
+        entry.setCrc(crc.getValue());
+        zipOutputStream.putNextEntry(entry);
+        zipOutputStream.write(pdf);
+        zipOutputStream.closeEntry();
+        entryCount++;
+    }
+
+    // Rethrows a render failure as it was thrown by the renderer
+    private static RenderedPdf getRenderedPdf(Future<RenderedPdf> completed) throws IOException {
+        try {
+            return completed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering the consent PDFs", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // Closing a ZipOutputStream finishes it, aborting only releases its deflater
+    private static class AbortableZipOutputStream extends ZipOutputStream {
+
+        private AbortableZipOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        private void abort() {
+            def.end();
+        }
+    }
+
+    @Value
+    private static class RenderedPdf {
+        String entryName;
+        byte[] pdf;
+    }
+}
@@ -0,0 +1,114 @@
+package gov.samhsa.c2s.c2ssofapi.service.pdf;
+
+import gov.samhsa.c2s.c2ssofapi.config.PdfProperties;
+import gov.samhsa.c2s.c2ssofapi.service.dto.DetailedConsentDto;
+import gov.samhsa.c2s.c2ssofapi.service.dto.PatientDto;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps rendered consent PDFs in memory, keyed by the FHIR server, consent id and version, PDF type, a hash of the
+ * rendered consent and patient, and the render date (the PDFs print the signing date). The patient and actors printed
+ * in a PDF can change without a new consent version, hashing them renders the PDF again after such an edit.
+ * The least recently used PDFs are evicted once the cached documents exceed the configured total size, and PDFs older
+ * than the time to live are rendered again.
+ */
+@Component
+@Slf4j
+public class ConsentPdfCache {
+
+    private final PdfProperties.Cache config;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long sizeInBytes;
+
+    public ConsentPdfCache(PdfProperties pdfProperties) {
+        this.config = pdfProperties.getCache();
+    }
+
+    /**
+     * Returns the cached PDF of the given consent version rendered from the given consent and patient, rendering it
+     * with the renderer when it is not cached. The DTOs are hashed by their string forms, which list all their fields.
+     * Consents without a version id are always rendered, since their content cannot be told apart.
+     */
+    public byte[] get(String serverBase, String consentId, String versionId, String pdfType, DetailedConsentDto detailedConsentDto,
+                      PatientDto patientDto, PdfRenderer renderer) throws IOException {
+        if (!config.isEnabled() || versionId == null) {
+            return renderer.render();
+        }
+        Key key = new Key(serverBase, consentId, versionId, pdfType,
+                DigestUtils.sha256Hex(detailedConsentDto + "\n" + patientDto),
+                LocalDate.now());
+        byte[] cached = getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        byte[] pdf = renderer.render();
+        put(key, pdf);
+        return pdf;
+    }
+
+    private synchronized byte[] getIfPresent(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.getCreatedAtInMs() >= config.getTimeToLiveInSeconds() * 1000) {
+            remove(key);
+            return null;
+        }
+        return entry.getPdf();
+    }
+
+    private synchronized void put(Key key, byte[] pdf) {
+        if (pdf.length > config.getMaxSizeInBytes()) {
+            log.debug("Consent PDF of " + pdf.length + " bytes is larger than the PDF cache, not caching it");
+            return;
+        }
+        remove(key);
+        entries.put(key, new Entry(pdf, System.currentTimeMillis()));
+        sizeInBytes += pdf.length;
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (sizeInBytes > config.getMaxSizeInBytes() && eldest.hasNext()) {
+            sizeInBytes -= eldest.next().getValue().getPdf().length;
+            eldest.remove();
+        }
+    }
+
+    private void remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            sizeInBytes -= removed.getPdf().length;
+        }
+    }
+
+    @FunctionalInterface
+    public interface PdfRenderer {
+        byte[] render() throws IOException;
+    }
+
+    @Value
+    private static class Key {
+        String serverBase;
+        String consentId;
+        String versionId;
+        String pdfType;
+        String contentHash;
+        LocalDate renderDate;
+    }
+
+    @Value
+    private static class Entry {
+        byte[] pdf;
+        long createdAtInMs;
+    }
+}
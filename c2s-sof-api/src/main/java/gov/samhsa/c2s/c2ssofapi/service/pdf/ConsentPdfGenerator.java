@@ -5,19 +5,20 @@
 import gov.samhsa.c2s.c2ssofapi.service.dto.PatientDto;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Optional;
 
 public interface ConsentPdfGenerator {
     String getConsentTitle(String pdfType);
 
-    void drawConsentTitle(HexPDF document, String consentTitle);
+    void drawPatientInformationSection(PdfDocumentWriter document, DetailedConsentDto detailedConsentDto, PatientDto patientDto) throws IOException;
 
-    void setPageFooter(HexPDF document, String consentTitle);
+    void addConsentSigningDetails(PdfDocumentWriter document, PatientDto patient, Boolean signedByPatient) throws IOException;
 
-    void drawPatientInformationSection(HexPDF document, DetailedConsentDto detailedConsentDto, PatientDto patientDto);
-
-    void addConsentSigningDetails(HexPDF document, PatientDto patient, Boolean signedByPatient) throws IOException;
+    void drawSignature(PdfDocumentWriter document, String signatureDataUrl) throws IOException;
 
     byte[] generateConsentPdf(DetailedConsentDto detailedConsent, PatientDto patientProfile, Boolean operatedByPatient, Optional<String> signatureDataUrl) throws IOException;
 
+    void generateConsentPdf(DetailedConsentDto detailedConsent, PatientDto patientProfile, Boolean operatedByPatient, Optional<String> signatureDataUrl, OutputStream outputStream) throws IOException;
+
 }
@@ -9,16 +9,13 @@
 import gov.samhsa.c2s.c2ssofapi.service.exception.NoEmailFoundException;
 import gov.samhsa.c2s.c2ssofapi.service.exception.PdfConfigMissingException;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.codec.binary.Base64;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
-import javax.imageio.ImageIO;
-import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
@@ -29,12 +26,15 @@
 
 @Service
 @Slf4j
-public class ConsentPdfGeneratorWithHexPdfImpl implements ConsentPdfGenerator {
+public class ConsentPdfGeneratorImpl implements ConsentPdfGenerator {
     private static final String DATE_FORMAT_PATTERN = "MMM dd, yyyy";
     private static final String CONSENT_PDF = "consent-pdf";
     private static final String TELECOM_EMAIL = "EMAIL";
     private static final String userNameKey = "ATTESTER_FULL_NAME";
     private static final String SPACE_PATTERN = " ";
+    // Large enough for a typical consent, so the buffer rarely has to grow
+    static final int INITIAL_PDF_BUFFER_SIZE = 16 * 1024;
+    private static final float SIGNATURE_SCALE = 0.25f;
 
     private static final String CONSENT_TERM = "I, " + userNameKey + ", understand that my records are protected under the federal regulations governing Confidentiality of"
             + " Alcohol and Drug Abuse Patient Records, 42 CFR part 2, and cannot be disclosed without my written"
@@ -47,51 +47,53 @@ public class ConsentPdfGeneratorWithHexPdfImpl implements ConsentPdfGenerator {
 
     private final PdfProperties pdfProperties;
 
+    private final PdfEngine pdfEngine;
+
     @Autowired
-    public ConsentPdfGeneratorWithHexPdfImpl(PdfProperties pdfProperties) {
+    public ConsentPdfGeneratorImpl(PdfProperties pdfProperties, PdfEngine pdfEngine) {
         this.pdfProperties = pdfProperties;
+        this.pdfEngine = pdfEngine;
     }
 
     @Override
     public byte[] generateConsentPdf(DetailedConsentDto detailedConsent, PatientDto patientDto, Boolean operatedByPatient, Optional<String> signatureDataUrl) throws IOException {
+        ByteArrayOutputStream pdfOutputStream = new ByteArrayOutputStream(INITIAL_PDF_BUFFER_SIZE);
+        generateConsentPdf(detailedConsent, patientDto, operatedByPatient, signatureDataUrl, pdfOutputStream);
+        return pdfOutputStream.toByteArray();
+    }
+
+    @Override
+    public void generateConsentPdf(DetailedConsentDto detailedConsent, PatientDto patientDto, Boolean operatedByPatient, Optional<String> signatureDataUrl, OutputStream outputStream) throws IOException {
         Assert.notNull(detailedConsent, "Consent is required.");
 
         String consentTitle = getConsentTitle(CONSENT_PDF);
 
-        HexPDF document = new HexPDF();
-
-        setPageFooter(document, "");
-
-        // Create the first page
-        document.newPage();
-
-        // Set document title
-        drawConsentTitle(document, consentTitle);
+        try (PdfDocumentWriter document = pdfEngine.newDocument("")) {
+            // Set document title
+            document.drawTitle(consentTitle);
 
-        // Typeset everything else in boring black
-        document.setTextColor(Color.black);
+            drawPatientInformationSection(document, detailedConsent, patientDto);
 
-        document.normalStyle();
+            drawAuthorizeToDiscloseSectionTitle(document, detailedConsent);
 
-        drawPatientInformationSection(document, detailedConsent, patientDto);
+            drawHealthInformationToBeDisclosedSection(document, detailedConsent);
 
-        drawAuthorizeToDiscloseSectionTitle(document, detailedConsent);
+            drawConsentTermsSection(document, detailedConsent);
 
-        drawHealthInformationToBeDisclosedSection(document, detailedConsent);
+            drawEffectiveAndExspireDateSection(document, detailedConsent);
 
-        drawConsentTermsSection(document, detailedConsent);
+            // Consent signing details
+            if (detailedConsent.getStatus().equalsIgnoreCase("Active")) {
+                addConsentSigningDetails(document, patientDto, operatedByPatient);
+            }
 
-        drawEffectiveAndExspireDateSection(document, detailedConsent);
+            if (signatureDataUrl.isPresent()) {
+                drawSignature(document, signatureDataUrl.get());
+            }
 
-        // Consent signing details
-        if (detailedConsent.getStatus().equalsIgnoreCase("Active")) {
-            addConsentSigningDetails(document, patientDto, operatedByPatient);
+            // Write the document
+            document.finish(outputStream);
         }
-
-        signatureDataUrl.ifPresent(s -> drawSignature(document, s));
-
-        // Get the document
-        return document.getDocumentAsBytArray();
     }
 
     @Override
@@ -104,51 +106,27 @@ public String getConsentTitle(String pdfType) {
     }
 
     @Override
-    public void setPageFooter(HexPDF document, String consentTitle) {
-        document.setFooter(Footer.defaultFooter);
-        // Change center text in footer
-        document.getFooter().setCenterText(consentTitle);
-        // Use footer also on first page
-        document.getFooter().setOMIT_FIRSTPAGE(false);
-    }
-
-    public void drawConsentTitle(HexPDF document, String consentTitle) {
-        // Add a main title, centered in shiny colours
-        document.title1Style();
-        document.setTextColor(Color.black);
-        document.drawText(consentTitle + NEWLINE_CHARACTER, HexPDF.CENTER);
-    }
-
-    @Override
-    public void drawPatientInformationSection(HexPDF document, DetailedConsentDto detailedConsent, PatientDto patientDto) {
+    public void drawPatientInformationSection(PdfDocumentWriter document, DetailedConsentDto detailedConsent, PatientDto patientDto) throws IOException {
         String patientFullName = detailedConsent.getPatient().getDisplay();
         String patientBirthDate = formatLocalDate(patientDto.getBirthDate(), DATE_FORMAT_PATTERN);
 
-        Object[][] patientInfo = {
+        String[][] patientInfo = {
                 {NEWLINE_CHARACTER + "Consent Reference Number: " + detailedConsent.getLogicalId(), null},
                 {NEWLINE_CHARACTER + "Patient Name: " + patientFullName, NEWLINE_CHARACTER + "Patient DOB: " + patientBirthDate}
         };
         float[] patientInfoTableColumnWidth = new float[]{240, 240};
-        int[] patientInfoTableColumnAlignment = new int[]{HexPDF.LEFT, HexPDF.LEFT};
 
-        document.drawTable(patientInfo,
-                patientInfoTableColumnWidth,
-                patientInfoTableColumnAlignment,
-                HexPDF.LEFT);
+        document.drawTable(patientInfo, patientInfoTableColumnWidth);
     }
 
 
-    private void drawAuthorizeToDiscloseSectionTitle(HexPDF document, DetailedConsentDto detailedConsent) {
-        Object[][] title = {
+    private void drawAuthorizeToDiscloseSectionTitle(PdfDocumentWriter document, DetailedConsentDto detailedConsent) throws IOException {
+        String[][] title = {
                 {"AUTHORIZATION TO DISCLOSE"}
         };
         float[] AuthorizationTitleTableColumnWidth = new float[]{480};
-        int[] AuthorizationTitleTableColumnAlignment = new int[]{HexPDF.LEFT};
-        document.drawTable(title,
-                AuthorizationTitleTableColumnWidth,
-                AuthorizationTitleTableColumnAlignment,
-                HexPDF.LEFT);
-        drawAuthorizationSubSectionHeader(document, NEWLINE_CHARACTER + "Authorizes:" + NEWLINE_CHARACTER);
+        document.drawTable(title, AuthorizationTitleTableColumnWidth);
+        document.drawHeading(NEWLINE_CHARACTER + "Authorizes:" + NEWLINE_CHARACTER);
 
         if (detailedConsent.isGeneralDesignation()) {
             drawTableWithGeneralDesignation(document, detailedConsent);
@@ -163,7 +141,7 @@ private void drawAuthorizeToDiscloseSectionTitle(HexPDF document, DetailedConsen
         if (detailedConsent.getFromRelatedPersons() != null)
             drawActorsTable(document, detailedConsent.getFromRelatedPersons());
 
-        drawAuthorizationSubSectionHeader(document, NEWLINE_CHARACTER + "To disclose to:" + NEWLINE_CHARACTER);
+        document.drawHeading(NEWLINE_CHARACTER + "To disclose to:" + NEWLINE_CHARACTER);
 
         if (detailedConsent.getToOrganizationActors() != null)
             drawActorsTable(document, detailedConsent.getToOrganizationActors());
@@ -179,29 +157,18 @@ private void drawAuthorizeToDiscloseSectionTitle(HexPDF document, DetailedConsen
 
     }
 
-
-    private void drawAuthorizationSubSectionHeader(HexPDF document, String header) {
-        document.title2Style();
-        document.drawText(header);
-        document.normalStyle();
-    }
-
-    private void drawTableWithGeneralDesignation(HexPDF document, DetailedConsentDto consentDto) {
+    private void drawTableWithGeneralDesignation(PdfDocumentWriter document, DetailedConsentDto consentDto) throws IOException {
         if (consentDto.isGeneralDesignation()) {
             float[] GeneralDesignationTableColumnWidth = new float[]{480};
-            int[] GeneralDesignationTableColumnAlignment = new int[]{HexPDF.LEFT};
-            Object[][] generalDesignationText = {{"General Designation Consent"}};
-            document.drawTable(generalDesignationText,
-                    GeneralDesignationTableColumnWidth,
-                    GeneralDesignationTableColumnAlignment,
-                    HexPDF.LEFT);
+            String[][] generalDesignationText = {{"General Designation Consent"}};
+            document.drawTable(generalDesignationText, GeneralDesignationTableColumnWidth);
         }
 
     }
 
-    private void drawActorsTable(HexPDF document, List<AbstractCareTeamDto> actors) {
+    private void drawActorsTable(PdfDocumentWriter document, List<AbstractCareTeamDto> actors) throws IOException {
 
-        Object[][] tableContentsForPractitioners = new Object[actors.size() + 1][5];
+        String[][] tableContentsForPractitioners = new String[actors.size() + 1][5];
         tableContentsForPractitioners[0][0] = "Name";
         tableContentsForPractitioners[0][1] = "Id";
         tableContentsForPractitioners[0][2] = "Identifier";
@@ -219,20 +186,16 @@ private void drawActorsTable(HexPDF document, List<AbstractCareTeamDto> actors)
 
 
         float[] actorTableColumnWidth = new float[]{160, 40, 80, 120, 80};
-        int[] providerTableColumnAlignment = new int[]{HexPDF.LEFT, HexPDF.LEFT, HexPDF.LEFT, HexPDF.LEFT, HexPDF.LEFT};
 
         if (actors.size() > 0)
-            document.drawTable(tableContentsForPractitioners,
-                    actorTableColumnWidth,
-                    providerTableColumnAlignment,
-                    HexPDF.LEFT);
+            document.drawTable(tableContentsForPractitioners, actorTableColumnWidth);
     }
 
 
-    private void drawCareTeamTable(HexPDF document, List<ReferenceDto> actors) {
+    private void drawCareTeamTable(PdfDocumentWriter document, List<ReferenceDto> actors) throws IOException {
 
 
-        Object[][] tableContentsForCareTeams = new Object[actors.size() + 1][3];
+        String[][] tableContentsForCareTeams = new String[actors.size() + 1][3];
         tableContentsForCareTeams[0][0] = "Type";
         tableContentsForCareTeams[0][1] = "Name";
         tableContentsForCareTeams[0][2] = "Id";
@@ -246,27 +209,19 @@ private void drawCareTeamTable(HexPDF document, List<ReferenceDto> actors) {
 
 
         float[] actorTableColumnWidth = new float[]{160, 160, 160};
-        int[] providerTableColumnAlignment = new int[]{HexPDF.LEFT, HexPDF.LEFT, HexPDF.LEFT};
 
         if (actors.size() > 0)
-            document.drawTable(tableContentsForCareTeams,
-                    actorTableColumnWidth,
-                    providerTableColumnAlignment,
-                    HexPDF.LEFT);
+            document.drawTable(tableContentsForCareTeams, actorTableColumnWidth);
     }
 
-    private void drawHealthInformationToBeDisclosedSection(HexPDF document, DetailedConsentDto consentDto) {
+    private void drawHealthInformationToBeDisclosedSection(PdfDocumentWriter document, DetailedConsentDto consentDto) throws IOException {
         document.drawText(NEWLINE_CHARACTER);
 
-        Object[][] title = {
+        String[][] title = {
                 {"HEALTH INFORMATION TO BE DISCLOSED"}
         };
         float[] healthInformationTaleWidth = new float[]{480};
-        int[] healthInformationTaleAlignment = new int[]{HexPDF.LEFT};
-        document.drawTable(title,
-                healthInformationTaleWidth,
-                healthInformationTaleAlignment,
-                HexPDF.LEFT);
+        document.drawTable(title, healthInformationTaleWidth);
 
         String sensitivityCategoriesLabel = "To SHARE the following medical information:";
         String subLabel = "Sensitivity Categories:";
@@ -283,74 +238,58 @@ private void drawHealthInformationToBeDisclosedSection(HexPDF document, Detailed
                 .map(valueSet -> valueSet.getDisplay()).collect(Collectors.joining(NEWLINE_AND_LIST_PREFIX));
         String purposeOfUseStr = purposeLabel.concat(NEWLINE_AND_LIST_PREFIX).concat(purposes);
 
-        Object[][] healthInformationHeaders = {
+        String[][] healthInformationHeaders = {
                 {sensitivityCategoriesStr, purposeOfUseStr}
         };
         float[] healthInformationTableColumnWidth = new float[]{240, 240};
-        int[] healthInformationTableColumnAlignment = new int[]{HexPDF.LEFT, HexPDF.LEFT};
 
-        document.drawTable(healthInformationHeaders,
-                healthInformationTableColumnWidth,
-                healthInformationTableColumnAlignment,
-                HexPDF.LEFT);
+        document.drawTable(healthInformationHeaders, healthInformationTableColumnWidth);
     }
 
-    private void drawConsentTermsSection(HexPDF document, DetailedConsentDto consentDto) {
+    private void drawConsentTermsSection(PdfDocumentWriter document, DetailedConsentDto consentDto) throws IOException {
 
-        Object[][] title = {
+        String[][] title = {
                 {"CONSENT TERMS"}
         };
         float[] consentTermsColumnWidth = new float[]{480};
-        int[] consentTermsColumnAlignment = new int[]{HexPDF.LEFT};
-        document.drawTable(title,
-                consentTermsColumnWidth,
-                consentTermsColumnAlignment,
-                HexPDF.LEFT);
+        document.drawTable(title, consentTermsColumnWidth);
 
         String termsWithAttestedName = CONSENT_TERM.replace(userNameKey, consentDto.getPatient().getDisplay().toUpperCase());
 
         document.drawText(termsWithAttestedName);
     }
 
-    private void drawEffectiveAndExspireDateSection(HexPDF document, DetailedConsentDto consent) {
+    private void drawEffectiveAndExspireDateSection(PdfDocumentWriter document, DetailedConsentDto consent) throws IOException {
         // Prepare table content
         String effectiveDateContent = "Effective Date: ".concat(formatLocalDate(consent.getPeriod().getStart(), DATE_FORMAT_PATTERN));
         String expirationDateContent = "Expiration Date: ".concat(formatLocalDate(consent.getPeriod().getEnd(), DATE_FORMAT_PATTERN));
 
-        Object[][] title = {
+        String[][] title = {
                 {effectiveDateContent, expirationDateContent}
         };
         document.drawText(NEWLINE_CHARACTER);
         document.drawText(NEWLINE_CHARACTER);
 
         float[] consentDurationTableColumnWidth = new float[]{240, 240};
-        int[] consentDurationTableColumnAlignment = new int[]{HexPDF.LEFT, HexPDF.LEFT};
-        document.drawTable(title,
-                consentDurationTableColumnWidth,
-                consentDurationTableColumnAlignment,
-                HexPDF.LEFT);
+        document.drawTable(title, consentDurationTableColumnWidth);
     }
 
     @Override
-    public void addConsentSigningDetails(HexPDF document, PatientDto patient, Boolean signedByPatient) throws IOException {
+    public void addConsentSigningDetails(PdfDocumentWriter document, PatientDto patient, Boolean signedByPatient) throws IOException {
         if (signedByPatient) {
             // Consent is signed by Patient
             addPatientSigningDetails(document, patient);
         }
     }
 
-    private void addPatientSigningDetails(HexPDF document, PatientDto patient) throws IOException {
+    private void addPatientSigningDetails(PdfDocumentWriter document, PatientDto patient) throws IOException {
         Date date = new Date();
-        Object[][] signedDetails = {
+        String[][] signedDetails = {
                 {createSignatureContent(patient, date)}
         };
         float[] patientDetailsColumnWidth = new float[]{480};
-        int[] patientDetailsColumnAlignment = new int[]{HexPDF.LEFT};
 
-        document.drawTable(signedDetails,
-                patientDetailsColumnWidth,
-                patientDetailsColumnAlignment,
-                HexPDF.LEFT);
+        document.drawTable(signedDetails, patientDetailsColumnWidth);
     }
 
     private String createSignatureContent(PatientDto patient, Date signedOnDateTime) {
@@ -378,35 +317,10 @@ private String createSignatureContent(PatientDto patient, Date signedOnDateTime)
         return signedByContent.concat(NEWLINE_CHARACTER).concat(signedByEmail).concat(NEWLINE_CHARACTER).concat(signedOn).concat(NEWLINE_CHARACTER);
     }
 
-    private void drawSignature(HexPDF document, String signatureDataUrl) {
-        BufferedImage basemap = decodeToImage(signatureDataUrl);
-        ImageResizer imageResizer = new ImageResizer();
-
-        try {
-            BufferedImage resizedImage = imageResizer.resize(basemap, 0.25);
-            document.drawImage(resizedImage, HexPDF.LEFT);
-
-        } catch (IOException e) {
-            System.out.println("Error resizing the image.");
-            e.printStackTrace();
-        }
-    }
-
-    private BufferedImage decodeToImage(String imageString) {
-
-        BufferedImage image = null;
-        try {
-            String encodingPrefix = "base64,";
-            int contentStartIndex = imageString.indexOf(encodingPrefix) + encodingPrefix.length();
-            byte[] imageData = Base64.decodeBase64(imageString.substring(contentStartIndex));
-
-            ByteArrayInputStream bis = new ByteArrayInputStream(imageData);
-            image = ImageIO.read(bis);
-            bis.close();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return image;
+    @Override
+    public void drawSignature(PdfDocumentWriter document, String signatureDataUrl) throws IOException {
+        // The signature keeps its resolution and is scaled down by the page content stream
+        document.drawSignature(signatureDataUrl, SIGNATURE_SCALE);
     }
 
     private String formatLocalDate(LocalDate localDate, String formatPattern) {
@@ -435,6 +349,4 @@ private static String filterNullAddressValue(String value) {
             return commaPattern.concat(value);
         }
     }
-
-
 }
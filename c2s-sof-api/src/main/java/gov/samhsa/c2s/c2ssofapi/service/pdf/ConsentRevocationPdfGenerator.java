@@ -4,10 +4,13 @@
 import gov.samhsa.c2s.c2ssofapi.service.dto.PatientDto;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Optional;
 
 public interface ConsentRevocationPdfGenerator {
 
     byte[] generateConsentRevocationPdf(DetailedConsentDto detailedConsent, PatientDto patient, Boolean revokedByPatient, Optional<String> signatureDataUrl) throws IOException;
 
+    void generateConsentRevocationPdf(DetailedConsentDto detailedConsent, PatientDto patient, Boolean revokedByPatient, Optional<String> signatureDataUrl, OutputStream outputStream) throws IOException;
+
 }
@@ -4,16 +4,13 @@
 import gov.samhsa.c2s.c2ssofapi.service.dto.DetailedConsentDto;
 import gov.samhsa.c2s.c2ssofapi.service.dto.PatientDto;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.codec.binary.Base64;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
-import javax.imageio.ImageIO;
-import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Optional;
 
 @Service
@@ -23,6 +20,8 @@ public class ConsentRevocationPdfGeneratorImpl implements ConsentRevocationPdfGe
     private static final String CONSENT_REVOCATION_PDF = "consent-revocation-pdf";
     private final ConsentPdfGenerator consentPdfGenerator;
 
+    private final PdfEngine pdfEngine;
+
     private final String CONSENT_REVOCATION_TERM = "I have previously signed a patient consent form allowing my providers to access my electronic health records\n" +
             "through the Consent2Share system and now want to withdraw that consent. If I sign this form as the Patient's\n" +
             "Legal Representative, I understand that all references in this form to \"me\" or \"my\" refer to the Patient.\n" +
@@ -41,82 +40,47 @@ public class ConsentRevocationPdfGeneratorImpl implements ConsentRevocationPdfGe
             "for reimbursement for services rendered to me in reliance on the Consent while it was in effect.\n" +
             "7. I understand that I will get a copy of this form after I sign it.";
 
-    private HexPDF document;
-
     @Autowired
-    public ConsentRevocationPdfGeneratorImpl(ConsentPdfGenerator consentPdfGenerator) {
+    public ConsentRevocationPdfGeneratorImpl(ConsentPdfGenerator consentPdfGenerator, PdfEngine pdfEngine) {
         this.consentPdfGenerator = consentPdfGenerator;
+        this.pdfEngine = pdfEngine;
     }
 
 
     @Override
     public byte[] generateConsentRevocationPdf(DetailedConsentDto detailedConsent, PatientDto patient, Boolean revokedByPatient, Optional<String> signatureDataUrl) throws IOException {
+        ByteArrayOutputStream pdfOutputStream = new ByteArrayOutputStream(ConsentPdfGeneratorImpl.INITIAL_PDF_BUFFER_SIZE);
+        generateConsentRevocationPdf(detailedConsent, patient, revokedByPatient, signatureDataUrl, pdfOutputStream);
+        return pdfOutputStream.toByteArray();
+    }
 
-        Assert.notNull(detailedConsent, "Consent is required.");
+    @Override
+    public void generateConsentRevocationPdf(DetailedConsentDto detailedConsent, PatientDto patient, Boolean revokedByPatient, Optional<String> signatureDataUrl, OutputStream outputStream) throws IOException {
 
-        document = new HexPDF();
+        Assert.notNull(detailedConsent, "Consent is required.");
 
         String consentTitle = consentPdfGenerator.getConsentTitle(CONSENT_REVOCATION_PDF);
 
-        consentPdfGenerator.setPageFooter(document, "");
+        try (PdfDocumentWriter document = pdfEngine.newDocument("")) {
+            // Set document title
+            document.drawTitle(consentTitle);
 
-        // Create the first page
-        document.newPage();
+            consentPdfGenerator.drawPatientInformationSection(document, detailedConsent, patient);
 
-        // Set document title
-        consentPdfGenerator.drawConsentTitle(document, consentTitle);
+            document.drawText("\n");
 
-        // Typeset everything else in boring black
-        document.setTextColor(Color.black);
+            document.drawStaticText(CONSENT_REVOCATION_TERM);
 
-        document.normalStyle();
+            document.drawText("\n\n");
 
-        consentPdfGenerator.drawPatientInformationSection(document, detailedConsent, patient);
+            consentPdfGenerator.addConsentSigningDetails(document, patient, revokedByPatient);
 
-        document.drawText("\n");
+            if (signatureDataUrl.isPresent()) {
+                consentPdfGenerator.drawSignature(document, signatureDataUrl.get());
+            }
 
-        document.drawText(CONSENT_REVOCATION_TERM);
-
-        document.drawText("\n\n");
-
-        consentPdfGenerator.addConsentSigningDetails(document, patient, revokedByPatient);
-
-        signatureDataUrl.ifPresent(s -> drawSignature(document, s));
-
-        // Get the document
-        return document.getDocumentAsBytArray();
-    }
-
-    private void drawSignature(HexPDF document, String signatureDataUrl) {
-        BufferedImage basemap = decodeToImage(signatureDataUrl);
-        ImageResizer imageResizer = new ImageResizer();
-
-        try {
-            BufferedImage resizedImage = imageResizer.resize(basemap, 0.25);
-            document.drawImage(resizedImage, HexPDF.LEFT);
-
-        } catch (IOException e) {
-            System.out.println("Error resizing the image.");
-            e.printStackTrace();
-        }
-    }
-
-    private BufferedImage decodeToImage(String imageString) {
-
-        BufferedImage image = null;
-        try {
-            String encodingPrefix = "base64,";
-            int contentStartIndex = imageString.indexOf(encodingPrefix) + encodingPrefix.length();
-            byte[] imageData = Base64.decodeBase64(imageString.substring(contentStartIndex));
-
-            ByteArrayInputStream bis = new ByteArrayInputStream(imageData);
-            image = ImageIO.read(bis);
-            bis.close();
-        } catch (Exception e) {
-            e.printStackTrace();
+            // Write the document
+            document.finish(outputStream);
         }
-        return image;
     }
-
-
 }
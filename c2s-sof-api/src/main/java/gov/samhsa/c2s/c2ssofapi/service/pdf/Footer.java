@@ -6,7 +6,6 @@
 package gov.samhsa.c2s.c2ssofapi.service.pdf;
 
 import org.apache.pdfbox.pdmodel.font.PDFont;
-import org.apache.pdfbox.pdmodel.font.PDType1Font;
 
 import java.awt.*;
 
@@ -72,7 +71,8 @@ public Footer() {
         rightText = "Page " + Footer.PAGENUM + " of " + Footer.NUMPAGES;
         OMIT_FIRSTPAGE = true;
         COUNT_FIRSTPAGE = true;
-        font = PDType1Font.TIMES_BOLD;
+        // Each footer loads its own font, the PDType1Font constants are not thread safe
+        font = HexPDF.newStandardFont("Times-Bold");
         fontsize = 8;
     }
 
@@ -171,7 +171,7 @@ public void setCOUNT_FIRSTPAGE(boolean COUNT_FIRSTPAGE) {
     /**
      * Returns the font selected for footer text.
      *
-     * @return currently selected font, default PDType1Font.TIMES_BOLD
+     * @return currently selected font, default Times-Bold
      */
     public PDFont getFont() {
         return font;
@@ -25,11 +25,13 @@
  */
 package gov.samhsa.c2s.c2ssofapi.service.pdf;
 
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.apache.fontbox.util.BoundingBox;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
-import org.apache.pdfbox.pdmodel.PDPageTree;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
@@ -40,8 +42,15 @@
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -237,6 +246,15 @@ public class HexPDF extends PDDocument {
     // Text processing
     private static final String TXT_NEWLINE = "@@NeWlInE@@";
 
+    // Glyph widths in text space units (1/1000 em) of the first 256 characters, per font, filled on first use
+    private final Map<PDFont, float[]> glyphWidths = new HashMap<>();
+
+    // Content streams of the closed pages, which get their footers when the document is finished
+    private final List<PDPageContentStream> pageContentStreams = new ArrayList<>();
+
+    // Images embedded in this document, see getImage
+    private final Map<String, PDImageXObject> images = new HashMap<>();
+
     // Styling
     private float normalFontSize = 10;
     private float title1FontSize = 20;
@@ -289,7 +307,7 @@ public HexPDF() {
         this.bottomMargin = 50f;
         this.topMargin = 50f;
         this.fontSize = 10;
-        this.font = PDType1Font.HELVETICA;
+        this.font = newStandardFont("Helvetica");
         this.pageSize = PDRectangle.A4;
         this.normalColor = Color.black;
         this.titleColor = Color.BLUE;
@@ -297,6 +315,27 @@ public HexPDF() {
         //firstPage();
     }
 
+    /**
+     * Creates a standard 14 font for a single document, encoded like the PDType1Font constants.
+     * The constants cache glyph widths and encoded characters in plain HashMaps, so they must not be shared by
+     * documents that are rendered concurrently.
+     *
+     * @param baseFont name of a standard 14 font, e.g. Helvetica
+     * @return a new font instance
+     */
+    public static PDFont newStandardFont(String baseFont) {
+        COSDictionary fontDictionary = new COSDictionary();
+        fontDictionary.setItem(COSName.TYPE, COSName.FONT);
+        fontDictionary.setItem(COSName.SUBTYPE, COSName.TYPE1);
+        fontDictionary.setName(COSName.BASE_FONT, baseFont);
+        fontDictionary.setItem(COSName.ENCODING, COSName.WIN_ANSI_ENCODING);
+        try {
+            return new PDType1Font(fontDictionary);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create the standard font " + baseFont, e);
+        }
+    }
+
     /**
      * Recalculate page boundaries after a change of margins or page style.
      * Automatically called after margin changes.
@@ -339,92 +378,145 @@ protected void setDimensions() {
      */
     protected float textWidth(String txt) {
         try {
-            return (font.getStringWidth(txt) * fontSize / 1000);
+            return (stringWidth(txt) * fontSize / 1000);
         } catch (IOException ex) {
             Logger.getLogger(HexPDF.class.getName()).log(Level.SEVERE, null, ex);
             return 0;
         }
     }
 
+    // Width of the string in text space units of the current font, summed from the cached glyph widths
+    private float stringWidth(String txt) throws IOException {
+        float[] widths = glyphWidths.get(font);
+        if (widths == null) {
+            widths = new float[256];
+            Arrays.fill(widths, -1);
+            glyphWidths.put(font, widths);
+        }
+        float width = 0;
+        for (int i = 0; i < txt.length(); i++) {
+            char c = txt.charAt(i);
+            if (c >= widths.length) {
+                return font.getStringWidth(txt);
+            }
+            if (widths[c] < 0) {
+                widths[c] = font.getStringWidth(String.valueOf(c));
+            }
+            width += widths[c];
+        }
+        return width;
+    }
+
+    /**
+     * Splits the text into words, marking explicit line breaks, and measures
+     * each word once with the current font and font size.
+     *
+     * @param txt The text to measure
+     * @return The measured words
+     */
+    private MeasuredText measureText(String txt) {
+        String[] words = txt.replace("\n", " " + HexPDF.TXT_NEWLINE + " ").split("\\s+");
+        float[] widths = new float[words.length];
+        for (int i = 0; i < words.length; i++) {
+            if (!words[i].equals(HexPDF.TXT_NEWLINE)) {
+                widths[i] = textWidth(words[i]);
+            }
+        }
+        return new MeasuredText(words, widths, textWidth(" "), font, fontSize);
+    }
+
+    // Reuses the measurement if it was taken with the current font and font size
+    private MeasuredText measureText(String txt, MeasuredText measured) {
+        return measured != null && measured.font == font && measured.fontSize == fontSize ? measured : measureText(txt);
+    }
+
     private void savedoc(String filename) throws IOException {
         closePage();
         super.save(filename);
     }
 
     /**
-     * Close the current page and add it to the document.
+     * Close the current page and add it to the document. Its content stream is
+     * closed when the document is finished, after the footer is drawn.
      *
      * @see #newPage()
      */
     protected void closePage() {
         if (currentPage != null) {
-            try {
-                cs.close();
-                addPage(currentPage);
-                currentPage = null;
-            } catch (IOException ex) {
-                Logger.getLogger(HexPDF.class.getName()).log(Level.SEVERE, null, ex);
-            }
+            addPage(currentPage);
+            currentPage = null;
+            // Kept open, the footer is added when the number of pages is known
+            pageContentStreams.add(cs);
         }
     }
 
-    private String replaceBookmarks(String str, int pagenum, int numpages) {
-        String ret = str;
-
-        String today = new SimpleDateFormat("dd MMM yyyy").format(Calendar.getInstance().getTime());
-        String user = System.getProperty("user.name");
-
-        ret = ret.replace(Footer.PAGENUM, "" + pagenum);
-        ret = ret.replace(Footer.NUMPAGES, "" + numpages);
-        ret = ret.replace(Footer.DATE, today);
-        ret = ret.replace(Footer.USER, user);
-        return ret;
+    // Replaces the bookmarks that are the same on all pages
+    private String replaceDocumentBookmarks(String str, String today, String user, int numpages) {
+        if (str == null) {
+            return "";
+        }
+        return str.replace(Footer.NUMPAGES, "" + numpages)
+                .replace(Footer.DATE, today)
+                .replace(Footer.USER, user);
     }
 
+    // Draws the footers at the end of each page's own content stream, which was left open by closePage,
+    // and closes the page content streams
     private void drawFooters() {
+        ignorePagebleed = true; // Now new pages while writing footers!
+        int total = 0;
+        String left = "", right = "", center = "";
         if (footer != null) {
-            ignorePagebleed = true; // Now new pages while writing footers!
-
-            int pg;
-            int pagecounter = 0;
-            int total = (footer.isCOUNT_FIRSTPAGE()) ? numPages : numPages - 1;
-            PDPageTree pages = this.getDocumentCatalog().getPages();
-            for (PDPage page : pages) {
-                pagecounter++;
-                try {
-                    cs = new PDPageContentStream(this, page, true, true);
+            total = (footer.isCOUNT_FIRSTPAGE()) ? numPages : numPages - 1;
+            String today = new SimpleDateFormat("dd MMM yyyy").format(Calendar.getInstance().getTime());
+            String user = System.getProperty("user.name");
+            left = replaceDocumentBookmarks(footer.getLeftText(), today, user, total);
+            right = replaceDocumentBookmarks(footer.getRightText(), today, user, total);
+            center = replaceDocumentBookmarks(footer.getCenterText(), today, user, total);
+        }
+        // Footer texts without a page number are laid out once for all pages
+        Map<String, TextLayout> layouts = new HashMap<>();
+
+        int pagecounter = 0;
+        for (PDPageContentStream pageContentStream : pageContentStreams) {
+            pagecounter++;
+            cs = pageContentStream;
+            try {
+                if (footer != null) {
                     setTextColor(footer.getTextColor());
-                    setFont(footer.getFont());
+                    // The page is closed, so setFontSize does not write the size, setFont writes both
                     setFontSize(footer.getFontsize());
+                    setFont(footer.getFont());
                     if (pagecounter > 1 || false == footer.isOMIT_FIRSTPAGE()) {
-                        pg = (footer.isCOUNT_FIRSTPAGE()) ? pagecounter : pagecounter - 1;
-
-                        //noinspection Since15
-                        if (footer.getLeftText() != null && !footer.getLeftText().isEmpty()) {
-                            String left = replaceBookmarks(footer.getLeftText(), pg, total);
-                            setCursor(contentStartX, contentEndY - lineSep);
-                            drawText(left, HexPDF.LEFT);
-                        }
-                        //noinspection Since15
-                        if (footer.getRightText() != null && !footer.getRightText().isEmpty()) {
-                            String right = replaceBookmarks(footer.getRightText(), pg, total);
-                            setCursor(contentStartX, contentEndY - lineSep);
-                            drawText(right, HexPDF.RIGHT);
-                        }
-                        //noinspection Since15
-                        if (footer.getCenterText() != null && !footer.getCenterText().isEmpty()) {
-                            String right = replaceBookmarks(footer.getCenterText(), pg, total);
-                            setCursor(contentStartX, contentEndY - lineSep);
-                            drawText(right, HexPDF.CENTER);
-                        }
+                        int pg = (footer.isCOUNT_FIRSTPAGE()) ? pagecounter : pagecounter - 1;
+                        drawFooterText(left, pg, HexPDF.LEFT, layouts);
+                        drawFooterText(right, pg, HexPDF.RIGHT, layouts);
+                        drawFooterText(center, pg, HexPDF.CENTER, layouts);
                     }
-                    cs.close();
-                } catch (IOException ex) {
-                    Logger.getLogger(HexPDF.class.getName()).log(Level.SEVERE, null, ex);
                 }
+                cs.close();
+            } catch (IOException ex) {
+                Logger.getLogger(HexPDF.class.getName()).log(Level.SEVERE, null, ex);
             }
-            ignorePagebleed = false;
         }
+        pageContentStreams.clear();
+        ignorePagebleed = false;
+    }
+
+    private void drawFooterText(String text, int pagenum, int flags, Map<String, TextLayout> layouts) {
+        //noinspection Since15
+        if (text.isEmpty()) {
+            return;
+        }
+        String pageText = text.replace(Footer.PAGENUM, "" + pagenum);
+        setCursor(contentStartX, contentEndY - lineSep);
+        String key = flags + ":" + pageText;
+        TextLayout layout = layouts.get(key);
+        if (layout == null || !layout.isLaidOutFor(this)) {
+            layout = layoutText(pageText, flags);
+            layouts.put(key, layout);
+        }
+        drawText(layout);
     }
 
     /**
@@ -477,10 +569,6 @@ public void newPage() {
      */
     public void finish(String filename) {
         try {
-            setTextColor(footer.getTextColor());
-            setFont(footer.getFont());
-            setFontSize(footer.getFontsize());
-
             closePage();
             drawFooters();
             savedoc(filename);
@@ -494,17 +582,28 @@ public byte[] getDocumentAsBytArray() {
         ByteArrayOutputStream pdfOutputStream = new ByteArrayOutputStream();
 
         try {
-            setTextColor(footer.getTextColor());
-            setFont(footer.getFont());
-            setFontSize(footer.getFontsize());
-            closePage();
-            drawFooters();
-            super.save(pdfOutputStream);
-            close();
+            finish(pdfOutputStream);
         } catch (IOException var6) {
             Logger.getLogger(HexPDF.class.getName()).log(Level.SEVERE, (String)null, var6);
+        }
+        return pdfOutputStream.toByteArray();
+    }
+
+    /**
+     * Draws the footers and writes the document to the given stream, then closes the document.
+     * The stream is left open, so the document can be written into a response or an archive entry.
+     *
+     * @param outputStream Stream to write the document to
+     * @throws IOException if the document can not be written
+     */
+    public void finish(OutputStream outputStream) throws IOException {
+        try {
+            closePage();
+            drawFooters();
+            // PDFBox closes the stream it saves to
+            super.save(new CloseShieldOutputStream(outputStream));
         } finally {
-            return pdfOutputStream.toByteArray();
+            close();
         }
     }
 
@@ -560,61 +659,65 @@ public float getCursorY() {
         return cursorY;
     }
 
-    private int makeLine(String[] words, int first, float maxlen) {
-        int num = 0;
-        String result = "";
+    // Number of words from first fitting on a line of maxlen, summing the measured word widths
+    private int makeLine(MeasuredText text, int first, float maxlen) {
+        String[] words = text.words;
         if (words[first].equals(HexPDF.TXT_NEWLINE)) {
             return -1;
         }
-        for (int i = first; i < words.length; i++) {
+        if (text.spaceWidth + text.widths[first] > maxlen) {
+            return 0;
+        }
+        float lineWidth = text.widths[first];
+        int num = 1;
+        for (int i = first + 1; i < words.length; i++) {
             if (words[i].equals(HexPDF.TXT_NEWLINE)) {
                 return num;
             }
-            String word = words[i].trim();
-            if (num == 0) {
-                if (textWidth(" " + word) > maxlen) {
-                    return 0;
-                } else {
-                    result = word;
-                    num++;
-                }
-            } else if (textWidth(result + " " + word) > maxlen) {
+            lineWidth += text.spaceWidth + text.widths[i];
+            if (lineWidth > maxlen) {
                 return num;
-            } else {
-                result += " " + word;
-                num++;
             }
+            num++;
         }
         return num;
     }
 
-    private void doDrawText(String line) {
+    private void doDrawText(String line, float width) {
         try {
             cs.beginText();
             cs.moveTextPositionByAmount(cursorX, cursorY);
             cs.drawString(line);
             cs.endText();
-            cursorX += font.getStringWidth(line) * fontSize / 1000;
+            cursorX += width;
         } catch (IOException ex) {
             Logger.getLogger(HexPDF.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
 
     private String join(String[] words, int first, int num) {
-        String ret = "";
-        String sep = "";
-        for (int i = first; i < first + num; i++) {
-            if (i < words.length) {
-                ret += sep + words[i];
-                sep = " ";
+        StringBuilder ret = new StringBuilder();
+        for (int i = first; i < first + num && i < words.length; i++) {
+            if (i > first) {
+                ret.append(' ');
             }
+            ret.append(words[i]);
         }
-        return ret;
+        return ret.toString();
+    }
+
+    // Width of num words from first, including the spaces between them
+    private float lineWidth(MeasuredText text, int first, int num) {
+        float width = 0;
+        for (int i = first; i < first + num && i < text.words.length; i++) {
+            width += (i > first) ? text.spaceWidth + text.widths[i] : text.widths[i];
+        }
+        return width;
     }
 
     // Estimate height of a table cell. Used by rowHeight to determine
     // if page break should be inserted in a table
-    private float elemHeight(Object elem, float startx, float endx, int flags) {
+    private float elemHeight(Object elem, MeasuredText measured, float startx, float endx, int flags) {
         String txt;
         if (elem instanceof BufferedImage) {
             return ((BufferedImage) elem).getHeight();
@@ -636,12 +739,12 @@ private float elemHeight(Object elem, float startx, float endx, int flags) {
         if (txt == null || txt.isEmpty()) {
             return 0;
         }
-        txt = txt.replace("\n", " " + HexPDF.TXT_NEWLINE + " ");
-        String[] words = txt.split("\\s+");
+        MeasuredText text = measureText(txt, measured);
+        String[] words = text.words;
         int i = 0;
         float height = 0;
         while (i < words.length) {
-            int num = makeLine(words, i, endx - cursorX);
+            int num = makeLine(text, i, endx - cursorX);
             if (num == -1) { // newline
                 i++;
                 cursorX = startx;
@@ -659,8 +762,7 @@ private float elemHeight(Object elem, float startx, float endx, int flags) {
                     i++;
                 }
             } else {
-                String toDraw = join(words, i, num);
-                float strlen = textWidth(toDraw);
+                float strlen = lineWidth(text, i, num);
                 if ((cursorX == startx) && (align == HexPDF.RIGHT || align == HexPDF.CENTER || align == HexPDF.JUSTIFY)) {
                     boolean newline_after = ((i + num) >= words.length || words[i + num].equals(HexPDF.TXT_NEWLINE));
                     if (align == HexPDF.JUSTIFY) {
@@ -686,10 +788,10 @@ private float elemHeight(Object elem, float startx, float endx, int flags) {
 
     // Estimate heght of a table row. Used for determining page breaks within
     // a table
-    private float rowHeight(float x, float y, float[] w, Object[] cells, int[] flags) {
+    private float rowHeight(float x, float y, float[] w, Object[] cells, MeasuredText[] measured, int[] flags) {
         float maxh = 0, thish, cellx = x;
         for (int i = 0; i < cells.length; i++) {
-            thish = (elemHeight(cells[i], cellx, w[i], flags[i]));
+            thish = (elemHeight(cells[i], measured[i], cellx, w[i], flags[i]));
             cellx += w[i];
             maxh = (thish > maxh) ? thish : maxh;
         }
@@ -714,7 +816,20 @@ private float rowHeight(float x, float y, float[] w, Object[] cells, int[] flags
      * @see #drawText(String, float, float, int)
      */
     protected float _drawText(String txt, float startx, float endx, int flags) {
-        float cystart = cursorY;
+        return drawMeasuredText(txt, null, startx, endx, flags);
+    }
+
+    // Draws the text as _drawText does, reusing the word measurements if they match the current font
+    private float drawMeasuredText(String txt, MeasuredText measured, float startx, float endx, int flags) {
+        //noinspection Since15
+        if (txt == null || txt.isEmpty()) {
+            return 0;
+        }
+        return drawLayout(layoutText(txt, measureText(txt, measured), startx, endx, flags));
+    }
+
+    // Word-wraps the text between startx and endx from the current cursor position, without drawing it
+    private TextLayout layoutText(String txt, MeasuredText text, float startx, float endx, int flags) {
         int align = HexPDF.LEFT;
         if ((flags & HexPDF.CENTER) > 0) {
             align = HexPDF.CENTER;
@@ -723,79 +838,119 @@ protected float _drawText(String txt, float startx, float endx, int flags) {
         } else if ((flags & HexPDF.JUSTIFY) > 0) {
             align = HexPDF.JUSTIFY;
         }
-        //noinspection Since15
-        if (txt == null || txt.isEmpty()) {
-            return 0;
-        }
-        txt = txt.replace("\n", " " + HexPDF.TXT_NEWLINE + " ");
-        String[] words = txt.split("\\s+");
+        List<TextLine> lines = new ArrayList<>();
+        String[] words = text.words;
+        float x = cursorX;
         int i = 0;
-        float height = 0;
         while (i < words.length) {
-            int num = makeLine(words, i, endx - cursorX);
+            int num = makeLine(text, i, endx - x);
             if (num == -1) { // newline
                 i++;
-                cursorX = startx;
-                cursorY -= lineSep;
-                // New page?
-                if (ignorePagebleed == false && ((cursorY - lineSep) < contentEndY)) {
-                    newPage();
-                    cursorX = startx;
-                }
-                height += lineSep;
+                lines.add(TextLine.LINE_BREAK);
+                x = startx;
             } else if (num == 0) {
-                if (cursorX > startx) {
+                if (x > startx) {
                     // Something on line from start. Try a newline first, then recheck.
-                    cursorX = startx;
-                    cursorY -= lineSep;
-                    // New page?
-                    if (ignorePagebleed == false && ((cursorY - lineSep) < contentEndY)) {
-                        newPage();
-                        cursorX = startx;
-                    }
+                    lines.add(TextLine.LINE_BREAK);
                 } else {
                     // a single word is too big for the box. Draw it!
-                    doDrawText(words[i]);
-                    cursorY -= lineSep;
-                    cursorX = startx;
+                    lines.add(new TextLine(words[i], x, text.widths[i], null, true));
                     i++;
-                    // New page?
-                    if (ignorePagebleed == false && ((cursorY - lineSep) < contentEndY)) {
-                        newPage();
-                        cursorX = startx;
-                    }
                 }
+                x = startx;
             } else {
                 String toDraw = join(words, i, num);
-                if ((cursorX == startx) && (align == HexPDF.RIGHT || align == HexPDF.CENTER || align == HexPDF.JUSTIFY)) {
-                    float strlen = textWidth(toDraw);
+                float strlen = lineWidth(text, i, num);
+                String charSpacing = null;
+                if ((x == startx) && (align == HexPDF.RIGHT || align == HexPDF.CENTER || align == HexPDF.JUSTIFY)) {
                     float space = endx - startx - strlen;
                     boolean newline_after = ((i + num) >= words.length || words[i + num].equals(HexPDF.TXT_NEWLINE));
                     if (align == HexPDF.JUSTIFY) {
                         if (newline_after == false) {
                             // Only justify if this is the not last line of the paragraph.
-                            try {
-                                cs.appendRawCommands(String.format("%f Tc\n", space / (toDraw.length() - 1)).replace(',', '.'));
-                                doDrawText(toDraw);
-                                toDraw = null;
-                                cs.appendRawCommands("0 Tc\n");
-                            } catch (IOException ex) {
-                                Logger.getLogger(HexPDF.class.getName()).log(Level.SEVERE, null, ex);
-                            }
+                            charSpacing = String.format("%f Tc\n", space / (toDraw.length() - 1)).replace(',', '.');
                         }
                     } else {
-                        cursorX += (align == HexPDF.RIGHT) ? space : space / 2;
+                        x += (align == HexPDF.RIGHT) ? space : space / 2;
                     }
                 }
-                if (toDraw != null) {
-                    doDrawText(toDraw);
-                }
+                lines.add(new TextLine(toDraw, x, strlen, charSpacing, false));
+                x += strlen;
                 i += num;
             }
         }
+        return new TextLayout(txt, flags, font, fontSize, startx, endx, cursorX, lines.toArray(new TextLine[lines.size()]));
+    }
+
+    // Draws the laid out lines from the current cursor position, starting new pages as needed
+    private float drawLayout(TextLayout layout) {
+        float cystart = cursorY;
+        for (TextLine line : layout.lines) {
+            if (line.text != null) {
+                cursorX = line.x;
+                if (line.charSpacing != null) {
+                    try {
+                        cs.appendRawCommands(line.charSpacing);
+                        doDrawText(line.text, line.width);
+                        cs.appendRawCommands("0 Tc\n");
+                    } catch (IOException ex) {
+                        Logger.getLogger(HexPDF.class.getName()).log(Level.SEVERE, null, ex);
+                    }
+                } else {
+                    doDrawText(line.text, line.width);
+                }
+            }
+            if (line.lineBreakAfter) {
+                cursorX = layout.startx;
+                cursorY -= lineSep;
+                // New page?
+                if (ignorePagebleed == false && ((cursorY - lineSep) < contentEndY)) {
+                    newPage();
+                    cursorX = layout.startx;
+                }
+            }
+        }
         return lineSep + cystart - cursorY;
     }
 
+    /**
+     * Word-wrap a text for drawing from the current cursor position between
+     * the current <code>leftMargin</code> and <code>rightMargin</code>, without
+     * drawing it. The layout can be drawn into any document with the same font,
+     * font size, margins and cursor x-position, which avoids wrapping invariant
+     * texts again for every document.
+     *
+     * @param txt   The text to be laid out
+     * @param flags One of
+     *              <code>HexPDF.LEFT | HexPDF.CENTER | HexPDF.RIGHT | HexPDF.JUSTIFY</code>
+     *              for text alignment between the margins
+     * @return the layout of the text
+     * @see #drawText(TextLayout)
+     */
+    public TextLayout layoutText(String txt, int flags) {
+        String text = (txt == null) ? "" : txt;
+        return layoutText(text, measureText(text), contentStartX, contentEndX, flags);
+    }
+
+    /**
+     * Draw a text laid out with {@link #layoutText(String, int)} from the
+     * current cursor position, creating new pages as {@link #drawText(String, int)}
+     * does. If the layout was made for another font, font size, margins or
+     * cursor x-position the text is laid out again.
+     *
+     * @param layout The laid out text
+     * @return Actual height of the string drawn
+     */
+    public float drawText(TextLayout layout) {
+        if (!layout.isLaidOutFor(this)) {
+            return drawText(layout.text, layout.flags);
+        }
+        if (layout.text.isEmpty()) {
+            return 0;
+        }
+        return drawLayout(layout);
+    }
+
     /**
      * Draw a text from the current cursor position. The text can be multi-line
      * and even multi-page. When crossing page boundaries
@@ -870,16 +1025,29 @@ public float drawText(String txt, float x, float y, int flags) {
      * @param flags see description
      */
     public void drawImage(BufferedImage image, int flags) {
-        PDImageXObject ximage = null;
-        float imW = 0;
-        float imH = 0;
+        PDImageXObject ximage;
         try {
             ximage = JPEGFactory.createFromImage(this, image);
-            imW = ximage.getWidth();
-            imH = ximage.getHeight();
         } catch (IOException ex) {
             Logger.getLogger(HexPDF.class.getName()).log(Level.SEVERE, null, ex);
+            return;
         }
+        drawImage(ximage, ximage.getWidth(), ximage.getHeight(), flags);
+    }
+
+    /**
+     * Draw an image XObject of this document scaled to the given size in
+     * points, starting at current cursor location. The image is scaled by the
+     * page content stream, the embedded image keeps its resolution. The flags
+     * are the same as for {@link #drawImage(BufferedImage, int)}.
+     *
+     * @param ximage the image to be added
+     * @param imW    width of the drawn image in points
+     * @param imH    height of the drawn image in points
+     * @param flags  see description
+     * @see #getImage(String, ImageFactory)
+     */
+    public void drawImage(PDImageXObject ximage, float imW, float imH, int flags) {
         // newpage if image cannot fit on rest of current page
         if ((cursorY - imH) < contentEndY) {
             newPage();
@@ -895,7 +1063,7 @@ public void drawImage(BufferedImage image, int flags) {
         }
 
         try {
-            cs.drawXObject(ximage, imgX, imgY, imW, imH);
+            cs.drawImage(ximage, imgX, imgY, imW, imH);
         } catch (IOException ex) {
             Logger.getLogger(HexPDF.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -927,12 +1095,31 @@ public void drawImage(BufferedImage image, float x, float y, int flags) {
         drawImage(image, flags);
     }
 
+    /**
+     * Retrieve the image XObject registered under the given key, creating it
+     * with the factory the first time. Drawing the same image several times
+     * then embeds it only once in the document.
+     *
+     * @param key     identifies the image content, e.g. its data URL
+     * @param factory creates the image for this document
+     * @return the image XObject
+     * @throws IOException if the image cannot be created
+     */
+    public PDImageXObject getImage(String key, ImageFactory factory) throws IOException {
+        PDImageXObject ximage = images.get(key);
+        if (ximage == null) {
+            ximage = factory.create(this);
+            images.put(key, ximage);
+        }
+        return ximage;
+    }
+
     // TABLE functions
 
     // Add a text cell to table
-    private float addCell(float x, float y, float w, String txt, int flags) {
+    private float addCell(float x, float y, float w, String txt, MeasuredText measured, int flags) {
         setCursor(x + tableCellMargin, y - 0.8f * lineSep);
-        return _drawText(txt, x + tableCellMargin, x + w - tableCellMargin, flags);
+        return drawMeasuredText(txt, measured, x + tableCellMargin, x + w - tableCellMargin, flags);
     }
 
     // Add an image cell to table
@@ -959,7 +1146,7 @@ private void addCellBorder(float x, float y, float w, float h) {
         }
     }
 
-    private float addRow(float x, float y, float[] w, Object[] cells, int[] flags) {
+    private float addRow(float x, float y, float[] w, Object[] cells, MeasuredText[] measured, int[] flags) {
         float maxh = 0;
         float thish = 0;
         float cellx = x;
@@ -967,7 +1154,7 @@ private float addRow(float x, float y, float[] w, Object[] cells, int[] flags) {
         for (i = 0; i < w.length; i++) {
             thish = 0;
             if (cells[i] instanceof String) {
-                thish = addCell(cellx, y, w[i], (String) cells[i], flags[i]);
+                thish = addCell(cellx, y, w[i], (String) cells[i], measured[i], flags[i]);
             } else if (cells[i] instanceof BufferedImage) {
                 thish = addCell(cellx, y, w[i], (BufferedImage) cells[i], flags[i]);
             }
@@ -1021,15 +1208,18 @@ public float drawTable(Object[][] table, float[] column_width, int[] column_flag
             x += ((table_align == HexPDF.CENTER) ? free_space / 2 : free_space);
         }
         int rownum = 1;
+        // Cell texts are measured once, for the height estimate of the next row, and drawn with the same measurements
+        MeasuredText[] measuredRow = (table.length > 0) ? measureRow(table[0]) : null;
         for (Object[] row : table) {
+            MeasuredText[] measuredNextRow = (rownum < table.length) ? measureRow(table[rownum]) : null;
             if (row != null) {
                 // Can the next row it fit on same page? Find the height of next
                 // row and make a new page after adding this row if necessary.
                 float guessRowHeight = 0;
                 if (rownum < table.length) {
-                    guessRowHeight = rowHeight(x, contentStartY, column_width, table[rownum], column_flag);
+                    guessRowHeight = rowHeight(x, contentStartY, column_width, table[rownum], measuredNextRow, column_flag);
                 }
-                rowheight = addRow(x, y - tabheight, column_width, row, column_flag);
+                rowheight = addRow(x, y - tabheight, column_width, row, measuredRow, column_flag);
                 tabheight += rowheight;
                 // Ne page before next row?
                 if ((y - tabheight - guessRowHeight) < contentEndY) {
@@ -1038,6 +1228,7 @@ public float drawTable(Object[][] table, float[] column_width, int[] column_flag
                     y = contentStartY;
                 }
             }
+            measuredRow = measuredNextRow;
             rownum++;
         }
         cursorX = contentStartX;
@@ -1046,6 +1237,19 @@ public float drawTable(Object[][] table, float[] column_width, int[] column_flag
         return tabheight;
     }
 
+    private MeasuredText[] measureRow(Object[] row) {
+        if (row == null) {
+            return null;
+        }
+        MeasuredText[] measured = new MeasuredText[row.length];
+        for (int i = 0; i < row.length; i++) {
+            if (row[i] instanceof String && !((String) row[i]).isEmpty()) {
+                measured[i] = measureText((String) row[i]);
+            }
+        }
+        return measured;
+    }
+
     // Setters and getters
 
     /**
@@ -1437,4 +1641,89 @@ public void setPageSize(PDRectangle pageSize) {
         this.pageSize = pageSize;
     }
 
+    /**
+     * The words of a text with their widths in points, as measured with the
+     * given font and font size.
+     */
+    private static final class MeasuredText {
+        private final String[] words;
+        private final float[] widths;
+        private final float spaceWidth;
+        private final PDFont font;
+        private final float fontSize;
+
+        private MeasuredText(String[] words, float[] widths, float spaceWidth, PDFont font, float fontSize) {
+            this.words = words;
+            this.widths = widths;
+            this.spaceWidth = spaceWidth;
+            this.font = font;
+            this.fontSize = fontSize;
+        }
+    }
+
+    /**
+     * Creates an image XObject for a document.
+     *
+     * @see #getImage(String, ImageFactory)
+     */
+    @FunctionalInterface
+    public interface ImageFactory {
+        PDImageXObject create(PDDocument document) throws IOException;
+    }
+
+    /**
+     * A word-wrapped text, see {@link #layoutText(String, int)}. Layouts are
+     * immutable and may be drawn into several documents, also concurrently.
+     */
+    public static final class TextLayout {
+        private final String text;
+        private final int flags;
+        private final PDFont font;
+        private final float fontSize;
+        private final float startx;
+        private final float endx;
+        private final float cursorX;
+        private final TextLine[] lines;
+
+        private TextLayout(String text, int flags, PDFont font, float fontSize, float startx, float endx, float cursorX, TextLine[] lines) {
+            this.text = text;
+            this.flags = flags;
+            this.font = font;
+            this.fontSize = fontSize;
+            this.startx = startx;
+            this.endx = endx;
+            this.cursorX = cursorX;
+            this.lines = lines;
+        }
+
+        /**
+         * @param document the document to draw into
+         * @return true if the document's font, font size, margins and cursor
+         * x-position are the ones this text was laid out for. Documents load
+         * their own fonts, so fonts are compared by name.
+         */
+        public boolean isLaidOutFor(HexPDF document) {
+            return font.getName().equals(document.font.getName()) && fontSize == document.fontSize && startx == document.contentStartX
+                    && endx == document.contentEndX && cursorX == document.cursorX;
+        }
+    }
+
+    // A line of a text layout, drawn at x. A line break without text moves to the next line.
+    private static final class TextLine {
+        private static final TextLine LINE_BREAK = new TextLine(null, 0, 0, null, true);
+
+        private final String text;
+        private final float x;
+        private final float width;
+        private final String charSpacing;
+        private final boolean lineBreakAfter;
+
+        private TextLine(String text, float x, float width, String charSpacing, boolean lineBreakAfter) {
+            this.text = text;
+            this.x = x;
+            this.width = width;
+            this.charSpacing = charSpacing;
+            this.lineBreakAfter = lineBreakAfter;
+        }
+    }
 }
@@ -0,0 +1,117 @@
+package gov.samhsa.c2s.c2ssofapi.service.pdf;
+
+import lombok.Value;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Renders consent documents with {@link HexPDF}.
+ */
+public class HexPdfEngine implements PdfEngine {
+
+    public static final String NAME = "hexpdf";
+
+    // Layouts of the invariant texts, i.e. the configured titles, section headers and terms
+    private final Map<StaticText, HexPDF.TextLayout> staticTextLayouts = new ConcurrentHashMap<>();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public PdfDocumentWriter newDocument(String footerCenterText) {
+        return new HexPdfDocumentWriter(footerCenterText);
+    }
+
+    @Value
+    private static class StaticText {
+        String text;
+        int flags;
+    }
+
+    private class HexPdfDocumentWriter implements PdfDocumentWriter {
+
+        private final HexPDF document = new HexPDF();
+
+        private HexPdfDocumentWriter(String footerCenterText) {
+            // Each document gets its own footer, the shared default footer must not be modified by concurrent renders
+            document.setFooter(new Footer());
+            // Change center text in footer
+            document.getFooter().setCenterText(footerCenterText);
+            // Use footer also on first page
+            document.getFooter().setOMIT_FIRSTPAGE(false);
+            // Create the first page
+            document.newPage();
+        }
+
+        @Override
+        public void drawTitle(String title) {
+            // Add a main title, centered
+            document.title1Style();
+            document.setTextColor(Color.black);
+            drawStaticText(title + "\n", HexPDF.CENTER);
+            // Typeset everything else in boring black
+            document.setTextColor(Color.black);
+            document.normalStyle();
+        }
+
+        @Override
+        public void drawHeading(String heading) {
+            document.title2Style();
+            drawStaticText(heading, HexPDF.LEFT);
+            document.normalStyle();
+        }
+
+        @Override
+        public void drawText(String text) {
+            document.drawText(text);
+        }
+
+        @Override
+        public void drawStaticText(String text) {
+            drawStaticText(text, HexPDF.LEFT);
+        }
+
+        private void drawStaticText(String text, int flags) {
+            StaticText staticText = new StaticText(text, flags);
+            HexPDF.TextLayout layout = staticTextLayouts.get(staticText);
+            if (layout == null || !layout.isLaidOutFor(document)) {
+                layout = document.layoutText(text, flags);
+                staticTextLayouts.put(staticText, layout);
+            }
+            document.drawText(layout);
+        }
+
+        @Override
+        public void drawTable(String[][] rows, float[] columnWidths) {
+            int[] columnAlignments = new int[columnWidths.length];
+            Arrays.fill(columnAlignments, HexPDF.LEFT);
+            document.drawTable(rows, columnWidths, columnAlignments, HexPDF.LEFT);
+        }
+
+        @Override
+        public void drawSignature(String signatureDataUrl, float scale) throws IOException {
+            // The signature keeps its resolution and is scaled down by the page content stream
+            PDImageXObject signature = document.getImage(signatureDataUrl,
+                    pdDocument -> ImageXObjectFactory.createFromDataUrl(pdDocument, signatureDataUrl));
+            document.drawImage(signature, signature.getWidth() * scale, signature.getHeight() * scale, HexPDF.LEFT);
+        }
+
+        @Override
+        public void finish(OutputStream outputStream) throws IOException {
+            document.finish(outputStream);
+        }
+
+        @Override
+        public void close() throws IOException {
+            document.close();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package gov.samhsa.c2s.c2ssofapi.service.pdf;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Creates PDF images from image data URLs without decoding them through AWT where possible.
+ * Non-interlaced 8 bit grayscale and RGB PNGs, as produced by signature pads, are embedded from their
+ * compressed pixel data: PNGs without transparency keep their compressed data, which PDF readers decode
+ * with the PNG predictors, and the alpha channel of PNGs with transparency becomes a soft mask. Other
+ * images are decoded with ImageIO and embedded losslessly. Images larger than a signature can reasonably be are
+ * rejected before their pixels are allocated.
+ */
+public final class ImageXObjectFactory {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    private static final String BASE64_PREFIX = "base64,";
+
+    private static final int PNG_COLOR_TYPE_GRAY = 0;
+    private static final int PNG_COLOR_TYPE_RGB = 2;
+    private static final int PNG_COLOR_TYPE_GRAY_ALPHA = 4;
+    private static final int PNG_COLOR_TYPE_RGB_ALPHA = 6;
+
+    private static final int PNG_PREDICTOR = 15;
+
+    private static final int MAX_IMAGE_DIMENSION = 4096;
+
+    private static final long MAX_IMAGE_PIXELS = 4L * 1024 * 1024;
+
+    private ImageXObjectFactory() {
+    }
+
+    public static PDImageXObject createFromDataUrl(PDDocument document, String dataUrl) throws IOException {
+        int contentStartIndex = dataUrl.indexOf(BASE64_PREFIX);
+        String content = (contentStartIndex < 0) ? dataUrl : dataUrl.substring(contentStartIndex + BASE64_PREFIX.length());
+        return createFromImageData(document, Base64.decodeBase64(content));
+    }
+
+    public static PDImageXObject createFromImageData(PDDocument document, byte[] imageData) throws IOException {
+        PDImageXObject image = isPng(imageData) ? createFromPng(document, imageData) : null;
+        if (image != null) {
+            return image;
+        }
+        return LosslessFactory.createFromImage(document, readImage(imageData));
+    }
+
+    private static BufferedImage readImage(byte[] imageData) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(imageData))) {
+            Iterator<ImageReader> readers = (in == null) ? Collections.emptyIterator() : ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                checkDimensions(reader.getWidth(0), reader.getHeight(0));
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static void checkDimensions(int width, int height) throws IOException {
+        if (width <= 0 || height <= 0 || width > MAX_IMAGE_DIMENSION || height > MAX_IMAGE_DIMENSION
+                || (long) width * height > MAX_IMAGE_PIXELS) {
+            throw new IOException("Unsupported image dimensions " + width + "x" + height);
+        }
+    }
+
+    private static boolean isPng(byte[] imageData) {
+        return imageData.length > PNG_SIGNATURE.length
+                && Arrays.equals(Arrays.copyOf(imageData, PNG_SIGNATURE.length), PNG_SIGNATURE);
+    }
+
+    // Returns null for PNGs that are not embedded directly (palette, 16 bit, interlaced or with a transparent color)
+    private static PDImageXObject createFromPng(PDDocument document, byte[] png) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(png);
+        buffer.position(PNG_SIGNATURE.length);
+        ByteArrayOutputStream compressedPixels = new ByteArrayOutputStream(png.length);
+        int width = 0;
+        int height = 0;
+        int colorType = -1;
+        boolean complete = false;
+        while (!complete && buffer.remaining() >= 12) {
+            int length = buffer.getInt();
+            String type = new String(png, buffer.position(), 4, StandardCharsets.US_ASCII);
+            int dataStart = buffer.position() + 4;
+            if (length < 0 || length > png.length - dataStart - 4) {
+                throw new IOException("Corrupt PNG chunk " + type);
+            }
+            switch (type) {
+                case "IHDR":
+                    if (length != 13) {
+                        throw new IOException("Corrupt PNG header");
+                    }
+                    width = buffer.getInt(dataStart);
+                    height = buffer.getInt(dataStart + 4);
+                    int bitDepth = png[dataStart + 8];
+                    colorType = png[dataStart + 9];
+                    int interlaceMethod = png[dataStart + 12];
+                    checkDimensions(width, height);
+                    if (bitDepth != 8 || interlaceMethod != 0) {
+                        return null;
+                    }
+                    break;
+                case "PLTE":
+                case "tRNS":
+                    return null;
+                case "IDAT":
+                    compressedPixels.write(png, dataStart, length);
+                    break;
+                case "IEND":
+                    complete = true;
+                    break;
+                default:
+                    // Ancillary chunks like gamma and text are not needed for signatures
+                    break;
+            }
+            buffer.position(dataStart + length + 4);
+        }
+        if (!complete) {
+            throw new IOException("Truncated PNG");
+        }
+
+        switch (colorType) {
+            case PNG_COLOR_TYPE_GRAY:
+                return createPredictedImage(document, compressedPixels.toByteArray(), width, height, PDDeviceGray.INSTANCE);
+            case PNG_COLOR_TYPE_RGB:
+                return createPredictedImage(document, compressedPixels.toByteArray(), width, height, PDDeviceRGB.INSTANCE);
+            case PNG_COLOR_TYPE_GRAY_ALPHA:
+                return createMaskedImage(document, compressedPixels.toByteArray(), width, height, PDDeviceGray.INSTANCE);
+            case PNG_COLOR_TYPE_RGB_ALPHA:
+                return createMaskedImage(document, compressedPixels.toByteArray(), width, height, PDDeviceRGB.INSTANCE);
+            default:
+                return null;
+        }
+    }
+
+    // Embeds the PNG compressed data as is, PDF FlateDecode with PNG predictors reads the same filtered rows
+    private static PDImageXObject createPredictedImage(PDDocument document, byte[] compressedPixels, int width, int height,
+                                                       PDColorSpace colorSpace) throws IOException {
+        PDImageXObject image = new PDImageXObject(document, new ByteArrayInputStream(compressedPixels), COSName.FLATE_DECODE,
+                width, height, 8, colorSpace);
+        COSDictionary decodeParms = new COSDictionary();
+        decodeParms.setInt(COSName.PREDICTOR, PNG_PREDICTOR);
+        decodeParms.setInt(COSName.COLORS, colorSpace.getNumberOfComponents());
+        decodeParms.setInt(COSName.BITS_PER_COMPONENT, 8);
+        decodeParms.setInt(COSName.COLUMNS, width);
+        image.getCOSObject().setItem(COSName.DECODE_PARMS, decodeParms);
+        return image;
+    }
+
+    // Splits the interleaved alpha channel into a soft mask, which is left out for fully opaque images
+    private static PDImageXObject createMaskedImage(PDDocument document, byte[] compressedPixels, int width, int height,
+                                                    PDColorSpace colorSpace) throws IOException {
+        int colors = colorSpace.getNumberOfComponents();
+        int bytesPerPixel = colors + 1;
+        byte[] pixels = unfilter(inflate(compressedPixels, height * (width * bytesPerPixel + 1)), width, height, bytesPerPixel);
+
+        byte[] color = new byte[width * height * colors];
+        byte[] alpha = new byte[width * height];
+        boolean opaque = true;
+        for (int pixel = 0, in = 0, out = 0; pixel < alpha.length; pixel++) {
+            for (int component = 0; component < colors; component++) {
+                color[out++] = pixels[in++];
+            }
+            alpha[pixel] = pixels[in++];
+            opaque &= alpha[pixel] == (byte) 0xff;
+        }
+
+        PDImageXObject image = new PDImageXObject(document, new ByteArrayInputStream(deflate(color)), COSName.FLATE_DECODE,
+                width, height, 8, colorSpace);
+        if (!opaque) {
+            PDImageXObject mask = new PDImageXObject(document, new ByteArrayInputStream(deflate(alpha)), COSName.FLATE_DECODE,
+                    width, height, 8, PDDeviceGray.INSTANCE);
+            image.getCOSObject().setItem(COSName.SMASK, mask);
+        }
+        return image;
+    }
+
+    private static byte[] inflate(byte[] compressed, int size) throws IOException {
+        byte[] inflated = new byte[size];
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(compressed))) {
+            int read = 0;
+            while (read < size) {
+                int count = in.read(inflated, read, size - read);
+                if (count < 0) {
+                    throw new IOException("Truncated PNG image data");
+                }
+                read += count;
+            }
+        }
+        return inflated;
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream(data.length / 4);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(deflated)) {
+            out.write(data);
+        }
+        return deflated.toByteArray();
+    }
+
+    // Reverses the PNG row filters, see https://www.w3.org/TR/PNG/#9Filters
+    private static byte[] unfilter(byte[] filtered, int width, int height, int bytesPerPixel) throws IOException {
+        int stride = width * bytesPerPixel;
+        byte[] pixels = new byte[stride * height];
+        for (int y = 0; y < height; y++) {
+            int filter = filtered[y * (stride + 1)];
+            int in = y * (stride + 1) + 1;
+            int out = y * stride;
+            for (int x = 0; x < stride; x++) {
+                int left = (x >= bytesPerPixel) ? pixels[out + x - bytesPerPixel] & 0xff : 0;
+                int up = (y > 0) ? pixels[out - stride + x] & 0xff : 0;
+                int upLeft = (x >= bytesPerPixel && y > 0) ? pixels[out - stride + x - bytesPerPixel] & 0xff : 0;
+                int value = filtered[in + x] & 0xff;
+                switch (filter) {
+                    case 0:
+                        break;
+                    case 1:
+                        value += left;
+                        break;
+                    case 2:
+                        value += up;
+                        break;
+                    case 3:
+                        value += (left + up) >>> 1;
+                        break;
+                    case 4:
+                        value += paeth(left, up, upLeft);
+                        break;
+                    default:
+                        throw new IOException("Unknown PNG filter type " + filter);
+                }
+                pixels[out + x] = (byte) value;
+            }
+        }
+        return pixels;
+    }
+
+    private static int paeth(int left, int up, int upLeft) {
+        int estimate = left + up - upLeft;
+        int distanceLeft = Math.abs(estimate - left);
+        int distanceUp = Math.abs(estimate - up);
+        int distanceUpLeft = Math.abs(estimate - upLeft);
+        if (distanceLeft <= distanceUp && distanceLeft <= distanceUpLeft) {
+            return left;
+        }
+        return (distanceUp <= distanceUpLeft) ? up : upLeft;
+    }
+}
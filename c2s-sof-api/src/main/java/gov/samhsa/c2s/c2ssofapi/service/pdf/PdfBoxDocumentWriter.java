@@ -0,0 +1,395 @@
+package gov.samhsa.c2s.c2ssofapi.service.pdf;
+
+import lombok.Value;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a consent document directly on PDFBox content streams, with the page layout of the HexPDF documents:
+ * A4 pages with 50 point margins, 10 point text, 20 and 15 point titles and bordered tables.
+ * Every page has a single content stream, which also receives the footer when the document is finished.
+ * Consecutive lines share one text object, font and color changes are only written when they change, glyph widths
+ * are measured once per document and an image drawn several times is embedded once.
+ */
+class PdfBoxDocumentWriter implements PdfDocumentWriter {
+
+    private static final PDRectangle PAGE_SIZE = PDRectangle.A4;
+    private static final float MARGIN = 50;
+    private static final float NORMAL_FONT_SIZE = 10;
+    private static final float TITLE_FONT_SIZE = 20;
+    private static final float HEADING_FONT_SIZE = 15;
+    private static final float FOOTER_FONT_SIZE = 8;
+    private static final float TABLE_CELL_MARGIN = 5;
+    // Line height relative to the font size, the height of Helvetica used by the HexPDF documents
+    private static final float LINE_SPACING = 1.156f;
+    // Distance from the top of a line to its baseline, relative to the line height
+    private static final float ASCENT = 0.8f;
+    private static final Color TEXT_COLOR = Color.BLACK;
+    private static final Color HEADING_COLOR = Color.BLUE;
+    private static final Color FOOTER_COLOR = Color.GRAY;
+    private static final String FOOTER_DATE_PATTERN = "dd MMM yyyy";
+
+    private static final float CONTENT_START_X = MARGIN;
+    private static final float CONTENT_END_X = PAGE_SIZE.getWidth() - MARGIN;
+    private static final float CONTENT_START_Y = PAGE_SIZE.getHeight() - MARGIN;
+    private static final float CONTENT_END_Y = MARGIN;
+
+    private final PDDocument document;
+
+    private final PDFont font;
+
+    private final PDFont footerFont;
+
+    private final String footerCenterText;
+
+    private final List<PDPageContentStream> pageContentStreams = new ArrayList<>();
+
+    private final Map<PDFont, float[]> glyphWidths = new HashMap<>();
+
+    private final Map<String, PDImageXObject> images = new HashMap<>();
+
+    private PDPageContentStream cs;
+
+    private float cursorX;
+
+    private float cursorY;
+
+    // Graphics state of the current content stream, to leave out redundant operators
+    private PDFont streamFont;
+    private float streamFontSize;
+    private Color streamColor;
+
+    // Start of the last line in the open text object, text positions are relative to it
+    private boolean inText;
+    private float textX;
+    private float textY;
+
+    PdfBoxDocumentWriter(PDDocument document, PDFont font, PDFont footerFont, String footerCenterText) throws IOException {
+        this.document = document;
+        this.font = font;
+        this.footerFont = footerFont;
+        this.footerCenterText = footerCenterText;
+        newPage();
+    }
+
+    @Override
+    public void drawTitle(String title) throws IOException {
+        writeText(title + "\n", TITLE_FONT_SIZE, TEXT_COLOR, true);
+    }
+
+    @Override
+    public void drawHeading(String heading) throws IOException {
+        writeText(heading, HEADING_FONT_SIZE, HEADING_COLOR, false);
+    }
+
+    @Override
+    public void drawText(String text) throws IOException {
+        writeText(text, NORMAL_FONT_SIZE, TEXT_COLOR, false);
+    }
+
+    @Override
+    public void drawStaticText(String text) throws IOException {
+        // Wrapping is cheap with the cached glyph widths, so invariant texts need no layout cache
+        drawText(text);
+    }
+
+    @Override
+    public void drawTable(String[][] rows, float[] columnWidths) throws IOException {
+        float lineHeight = lineHeight(NORMAL_FONT_SIZE);
+        float spaceWidth = textWidth(" ", NORMAL_FONT_SIZE);
+        if (cursorX > CONTENT_START_X) {
+            newLine(lineHeight);
+        }
+        float rowTop = cursorY;
+        for (String[] row : rows) {
+            List<List<Line>> cells = new ArrayList<>(columnWidths.length);
+            int rowLines = 0;
+            for (int column = 0; column < columnWidths.length; column++) {
+                String cell = (row != null && column < row.length) ? row[column] : null;
+                List<Line> lines = (cell == null) ? new ArrayList<>()
+                        : wrapLines(cell, NORMAL_FONT_SIZE, spaceWidth, columnWidths[column] - 2 * TABLE_CELL_MARGIN);
+                cells.add(lines);
+                rowLines = Math.max(rowLines, lines.size());
+            }
+            float rowHeight = rowLines * lineHeight;
+            if (rowTop - rowHeight < CONTENT_END_Y && rowTop < CONTENT_START_Y) {
+                newPage();
+                rowTop = cursorY;
+            }
+
+            float cellX = CONTENT_START_X;
+            for (int column = 0; column < columnWidths.length; column++) {
+                float baseline = rowTop - ASCENT * lineHeight;
+                for (Line line : cells.get(column)) {
+                    if (!line.getText().isEmpty()) {
+                        showText(line.getText(), cellX + TABLE_CELL_MARGIN, baseline, NORMAL_FONT_SIZE, TEXT_COLOR);
+                    }
+                    baseline -= lineHeight;
+                }
+                cellX += columnWidths[column];
+            }
+            endText();
+
+            cellX = CONTENT_START_X;
+            for (float columnWidth : columnWidths) {
+                cs.addRect(cellX, rowTop - rowHeight, columnWidth, rowHeight);
+                cellX += columnWidth;
+            }
+            cs.stroke();
+            rowTop -= rowHeight;
+        }
+        cursorX = CONTENT_START_X;
+        cursorY = rowTop - lineHeight - TABLE_CELL_MARGIN;
+        keepLineOnPage(lineHeight);
+    }
+
+    @Override
+    public void drawSignature(String signatureDataUrl, float scale) throws IOException {
+        PDImageXObject signature = images.get(signatureDataUrl);
+        if (signature == null) {
+            signature = ImageXObjectFactory.createFromDataUrl(document, signatureDataUrl);
+            images.put(signatureDataUrl, signature);
+        }
+        float width = signature.getWidth() * scale;
+        float height = signature.getHeight() * scale;
+        if (cursorY - height < CONTENT_END_Y) {
+            newPage();
+        }
+        endText();
+        cs.drawImage(signature, CONTENT_START_X, cursorY - height, width, height);
+        cursorX = CONTENT_START_X;
+        cursorY -= height + lineHeight(NORMAL_FONT_SIZE);
+        keepLineOnPage(lineHeight(NORMAL_FONT_SIZE));
+    }
+
+    @Override
+    public void finish(OutputStream outputStream) throws IOException {
+        try {
+            endText();
+            drawFooters();
+            // PDFBox closes the stream it saves to
+            document.save(new CloseShieldOutputStream(outputStream));
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        document.close();
+    }
+
+    // Typesets the text from the cursor, wrapping it at the right margin. A new line starts at the left margin.
+    private void writeText(String text, float fontSize, Color color, boolean centered) throws IOException {
+        float lineHeight = lineHeight(fontSize);
+        float spaceWidth = textWidth(" ", fontSize);
+        String[] paragraphs = text.split("\n", -1);
+        for (int i = 0; i < paragraphs.length; i++) {
+            if (i > 0) {
+                newLine(lineHeight);
+            }
+            float x = cursorX;
+            for (Line line : wrap(paragraphs[i], fontSize, spaceWidth, CONTENT_END_X - CONTENT_START_X, CONTENT_END_X - x)) {
+                if (line.isWrapped()) {
+                    newLine(lineHeight);
+                    x = CONTENT_START_X;
+                }
+                float lineX = (centered && x == CONTENT_START_X) ? x + (CONTENT_END_X - CONTENT_START_X - line.getWidth()) / 2 : x;
+                if (!line.getText().isEmpty()) {
+                    showText(line.getText(), lineX, cursorY, fontSize, color);
+                }
+                cursorX = lineX + line.getWidth();
+            }
+        }
+        endText();
+    }
+
+    // Breaks a text into lines of the given width, every line break in the text starts a line
+    private List<Line> wrapLines(String text, float fontSize, float spaceWidth, float width) throws IOException {
+        List<Line> lines = new ArrayList<>();
+        for (String paragraph : text.split("\n", -1)) {
+            List<Line> wrapped = wrap(paragraph, fontSize, spaceWidth, width, width);
+            lines.addAll(wrapped.isEmpty() ? Collections.singletonList(new Line("", 0, false)) : wrapped);
+        }
+        return lines;
+    }
+
+    // Breaks a paragraph into lines, the first of which continues a line with the given remaining width
+    private List<Line> wrap(String paragraph, float fontSize, float spaceWidth, float width, float firstLineWidth) throws IOException {
+        List<Line> lines = new ArrayList<>();
+        StringBuilder line = new StringBuilder();
+        float lineWidth = 0;
+        float available = firstLineWidth;
+        boolean wrapped = false;
+        for (String word : paragraph.split("\\s+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            float wordWidth = textWidth(word, fontSize);
+            boolean lineStarted = line.length() > 0;
+            float widthWithWord = lineStarted ? lineWidth + spaceWidth + wordWidth : wordWidth;
+            // A word that does not fit on an empty line of full width is drawn anyway
+            if (widthWithWord > available && (lineStarted || available < width)) {
+                if (lineStarted) {
+                    lines.add(new Line(line.toString(), lineWidth, wrapped));
+                } else {
+                    // Nothing fits on the continued line, start the word on the next one
+                    lines.add(new Line("", 0, wrapped));
+                }
+                line.setLength(0);
+                lineWidth = wordWidth;
+                available = width;
+                wrapped = true;
+            } else {
+                if (lineStarted) {
+                    line.append(' ');
+                }
+                lineWidth = widthWithWord;
+            }
+            line.append(word);
+        }
+        if (line.length() > 0) {
+            lines.add(new Line(line.toString(), lineWidth, wrapped));
+        }
+        return lines;
+    }
+
+    private void newLine(float lineHeight) throws IOException {
+        cursorX = CONTENT_START_X;
+        cursorY -= lineHeight;
+        keepLineOnPage(lineHeight);
+    }
+
+    // Starts a new page if a line at the cursor would reach into the footer
+    private void keepLineOnPage(float lineHeight) throws IOException {
+        if (cursorY - lineHeight < CONTENT_END_Y) {
+            newPage();
+        }
+    }
+
+    private void newPage() throws IOException {
+        endText();
+        PDPage page = new PDPage(PAGE_SIZE);
+        document.addPage(page);
+        cs = new PDPageContentStream(document, page);
+        pageContentStreams.add(cs);
+        streamFont = null;
+        streamColor = null;
+        cursorX = CONTENT_START_X;
+        cursorY = CONTENT_START_Y;
+    }
+
+    private void showText(String text, float x, float y, float fontSize, Color color) throws IOException {
+        if (!inText) {
+            cs.beginText();
+            inText = true;
+            textX = 0;
+            textY = 0;
+        }
+        if (streamFont != font || streamFontSize != fontSize) {
+            cs.setFont(font, fontSize);
+            streamFont = font;
+            streamFontSize = fontSize;
+        }
+        setColor(color);
+        cs.newLineAtOffset(x - textX, y - textY);
+        textX = x;
+        textY = y;
+        cs.showText(text);
+    }
+
+    private void endText() throws IOException {
+        if (inText) {
+            cs.endText();
+            inText = false;
+        }
+    }
+
+    private void setColor(Color color) throws IOException {
+        if (!color.equals(streamColor)) {
+            cs.setNonStrokingColor(color);
+            streamColor = color;
+        }
+    }
+
+    private void drawFooters() throws IOException {
+        String today = new SimpleDateFormat(FOOTER_DATE_PATTERN).format(new Date());
+        float footerY = CONTENT_END_Y - lineHeight(FOOTER_FONT_SIZE);
+        float centerWidth = textWidth(footerFont, footerCenterText, FOOTER_FONT_SIZE);
+        int pageCount = pageContentStreams.size();
+        for (int page = 1; page <= pageCount; page++) {
+            PDPageContentStream pageContentStream = pageContentStreams.get(page - 1);
+            String pageNumber = "Page " + page + " of " + pageCount;
+            pageContentStream.beginText();
+            pageContentStream.setFont(footerFont, FOOTER_FONT_SIZE);
+            pageContentStream.setNonStrokingColor(FOOTER_COLOR);
+            pageContentStream.newLineAtOffset(CONTENT_START_X, footerY);
+            pageContentStream.showText(today);
+            if (!footerCenterText.isEmpty()) {
+                pageContentStream.newLineAtOffset((CONTENT_END_X - CONTENT_START_X - centerWidth) / 2, 0);
+                pageContentStream.showText(footerCenterText);
+                pageContentStream.newLineAtOffset(-(CONTENT_END_X - CONTENT_START_X - centerWidth) / 2, 0);
+            }
+            pageContentStream.newLineAtOffset(CONTENT_END_X - CONTENT_START_X - textWidth(footerFont, pageNumber, FOOTER_FONT_SIZE), 0);
+            pageContentStream.showText(pageNumber);
+            pageContentStream.endText();
+            pageContentStream.close();
+        }
+        pageContentStreams.clear();
+    }
+
+    private static float lineHeight(float fontSize) {
+        return LINE_SPACING * fontSize;
+    }
+
+    private float textWidth(String text, float fontSize) throws IOException {
+        return textWidth(font, text, fontSize);
+    }
+
+    // Sums the cached widths of the Latin-1 glyphs, other texts are measured by the font
+    private float textWidth(PDFont font, String text, float fontSize) throws IOException {
+        float[] widths = glyphWidths.get(font);
+        if (widths == null) {
+            widths = new float[256];
+            Arrays.fill(widths, -1);
+            glyphWidths.put(font, widths);
+        }
+        float width = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= widths.length) {
+                return font.getStringWidth(text) / 1000 * fontSize;
+            }
+            if (widths[c] < 0) {
+                widths[c] = font.getStringWidth(String.valueOf(c));
+            }
+            width += widths[c];
+        }
+        return width / 1000 * fontSize;
+    }
+
+    @Value
+    private static class Line {
+        String text;
+        float width;
+        // Whether the line starts after a line break inserted by the wrapping
+        boolean wrapped;
+    }
+}
@@ -0,0 +1,58 @@
+package gov.samhsa.c2s.c2ssofapi.service.pdf;
+
+import gov.samhsa.c2s.c2ssofapi.service.exception.PdfConfigMissingException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.springframework.util.ResourceUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Renders consent documents directly on PDFBox content streams, see {@link PdfBoxDocumentWriter}.
+ * Only the glyphs of the configured TrueType font that are used by a document are embedded in it. The standard
+ * PDFBox fonts are shared constants that are not thread safe, so a font file is required.
+ */
+public class PdfBoxEngine implements PdfEngine {
+
+    public static final String NAME = "pdfbox";
+
+    // The font file is read once, every document parses its own copy since PDFBox fonts are not thread safe
+    private final byte[] fontData;
+
+    public PdfBoxEngine(String fontFile) {
+        if (!StringUtils.hasText(fontFile)) {
+            throw new PdfConfigMissingException("The pdfbox PDF engine requires a TrueType font file");
+        }
+        this.fontData = readFontFile(fontFile);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public PdfDocumentWriter newDocument(String footerCenterText) throws IOException {
+        PDDocument document = new PDDocument();
+        try {
+            PDFont font = PDType0Font.load(document, new ByteArrayInputStream(fontData), true);
+            return new PdfBoxDocumentWriter(document, font, font, footerCenterText);
+        } catch (IOException | RuntimeException e) {
+            document.close();
+            throw e;
+        }
+    }
+
+    private static byte[] readFontFile(String fontFile) {
+        try (InputStream in = ResourceUtils.getURL(fontFile).openStream()) {
+            return StreamUtils.copyToByteArray(in);
+        } catch (IOException e) {
+            throw new PdfConfigMissingException("Cannot read the PDF font file " + fontFile, e);
+        }
+    }
+}
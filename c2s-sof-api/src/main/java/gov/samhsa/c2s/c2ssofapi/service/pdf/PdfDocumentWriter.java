@@ -0,0 +1,47 @@
+package gov.samhsa.c2s.c2ssofapi.service.pdf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes one consent document, top to bottom. Text is typeset in the normal style and wraps at the page margins,
+ * a {@code "\n"} starts a new line and pages are added as needed.
+ */
+public interface PdfDocumentWriter extends Closeable {
+
+    /**
+     * Draws a centered document title followed by a line break.
+     */
+    void drawTitle(String title) throws IOException;
+
+    /**
+     * Draws an invariant section heading, such as a configured header.
+     */
+    void drawHeading(String heading) throws IOException;
+
+    /**
+     * Continues the text at the cursor.
+     */
+    void drawText(String text) throws IOException;
+
+    /**
+     * Continues the text at the cursor with text that is the same in every document, so its layout can be reused.
+     */
+    void drawStaticText(String text) throws IOException;
+
+    /**
+     * Draws a left aligned table with cell borders below the cursor. Cells may be null.
+     */
+    void drawTable(String[][] rows, float[] columnWidths) throws IOException;
+
+    /**
+     * Draws the image of an image data URL, scaled by the given factor, at the left margin below the cursor.
+     */
+    void drawSignature(String signatureDataUrl, float scale) throws IOException;
+
+    /**
+     * Draws the footers and writes the document to the stream, which is left open. The document is closed afterwards.
+     */
+    void finish(OutputStream outputStream) throws IOException;
+}
@@ -0,0 +1,19 @@
+package gov.samhsa.c2s.c2ssofapi.service.pdf;
+
+import java.io.IOException;
+
+/**
+ * Drawing engine of the consent PDFs. The generators describe a document in terms of {@link PdfDocumentWriter}
+ * calls, so the engine can be switched with the {@code c2s-sof-api.pdf.engine} property.
+ * Engines are shared by all requests and must be thread safe, the writers they create are not.
+ */
+public interface PdfEngine {
+
+    String getName();
+
+    /**
+     * Starts a document on a new first page. Every page gets a footer with the render date, the given center
+     * text and the page number.
+     */
+    PdfDocumentWriter newDocument(String footerCenterText) throws IOException;
+}
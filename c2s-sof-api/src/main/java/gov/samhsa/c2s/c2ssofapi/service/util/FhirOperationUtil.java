@@ -6,6 +6,7 @@
 import ca.uhn.fhir.rest.gclient.IQuery;
 import ca.uhn.fhir.rest.gclient.TokenClientParam;
 import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceVersionConflictException;
 import ca.uhn.fhir.validation.FhirValidator;
 import ca.uhn.fhir.validation.SingleValidationMessage;
 import ca.uhn.fhir.validation.ValidationResult;
@@ -13,6 +14,7 @@
 import gov.samhsa.c2s.c2ssofapi.domain.StructureDefinitionEnum;
 import gov.samhsa.c2s.c2ssofapi.service.exception.FHIRClientException;
 import gov.samhsa.c2s.c2ssofapi.service.exception.FHIRFormatErrorException;
+import gov.samhsa.c2s.c2ssofapi.service.exception.PreconditionFailedException;
 import lombok.extern.slf4j.Slf4j;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.DomainResource;
@@ -22,17 +24,24 @@
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static ca.uhn.fhir.rest.api.Constants.PARAM_LASTUPDATED;
 
 @Slf4j
 public class FhirOperationUtil {
 
-    private static final int PAGE_NUMBER = 2;
-
     public static void validateFhirResource(FhirValidator fhirValidator, DomainResource fhirResource,
                                             Optional<String> fhirResourceId, String fhirResourceName,
                                             String actionAndResourceName) {
@@ -66,6 +75,20 @@ public static MethodOutcome createFhirResource(IGenericClient fhirClient, Domain
         }
     }
 
+    /**
+     * Creates the resource unless one matches the search URL; {@link MethodOutcome#getCreated()} tells which happened.
+     */
+    public static MethodOutcome createFhirResourceIfNoneExist(IGenericClient fhirClient, DomainResource fhirResource, String matchUrl, String fhirResourceName) {
+        try {
+            MethodOutcome serverResponse = fhirClient.create().resource(fhirResource).conditionalByUrl(matchUrl).execute();
+            log.info((Boolean.TRUE.equals(serverResponse.getCreated()) ? "Created a new " : "Found an existing ") + fhirResourceName + " : " + serverResponse.getId().getIdPart());
+            return serverResponse;
+        } catch (BaseServerResponseException e) {
+            log.error("Could NOT create " + fhirResourceName);
+            throw new FHIRClientException("FHIR Client returned with an error while creating the " + fhirResourceName + " : " + e.getMessage());
+        }
+    }
+
     public static MethodOutcome updateFhirResource(IGenericClient fhirClient, DomainResource fhirResource, String actionAndResourceName) {
         try {
             MethodOutcome serverResponse = fhirClient.update().resource(fhirResource).execute();
@@ -77,6 +100,37 @@ public static MethodOutcome updateFhirResource(IGenericClient fhirClient, Domain
         }
     }
 
+    /**
+     * Updates the resource only if the server still holds the given version, sending it as If-Match.
+     */
+    public static MethodOutcome updateFhirResourceIfMatch(IGenericClient fhirClient, DomainResource fhirResource, String versionId, String actionAndResourceName) {
+        String resourceId = fhirResource.getIdElement().getIdPart();
+        try {
+            MethodOutcome serverResponse = fhirClient.update().resource(fhirResource)
+                    .withId(fhirResource.getIdElement().toUnqualifiedVersionless().withVersion(versionId))
+                    .execute();
+            log.info(actionAndResourceName + " was successful for Id: " + serverResponse.getId().getIdPart());
+            return serverResponse;
+        } catch (ca.uhn.fhir.rest.server.exceptions.PreconditionFailedException | ResourceVersionConflictException e) {
+            log.error("Could NOT " + actionAndResourceName + " with Id: " + resourceId + ", version " + versionId + " is no longer current");
+            throw new PreconditionFailedException(fhirResource.getResourceType().name() + " " + resourceId + " was modified by another request, please retry", e);
+        } catch (BaseServerResponseException e) {
+            log.error("Could NOT " + actionAndResourceName + " with Id: " + resourceId);
+            throw new FHIRClientException("FHIR Client returned with an error during" + actionAndResourceName + " : " + e.getMessage());
+        }
+    }
+
+    public static Bundle executeTransaction(IGenericClient fhirClient, Bundle transaction, String actionAndResourceName) {
+        try {
+            Bundle response = fhirClient.transaction().withBundle(transaction).execute();
+            log.info(actionAndResourceName + " transaction was successful with " + response.getEntry().size() + " entries");
+            return response;
+        } catch (BaseServerResponseException e) {
+            log.error("Could NOT " + actionAndResourceName + " in a transaction");
+            throw new FHIRClientException("FHIR Client returned with an error during the " + actionAndResourceName + " transaction : " + e.getMessage());
+        }
+    }
+
     public static IQuery setNoCacheControlDirective(IQuery searchQuery) {
         final CacheControlDirective cacheControlDirective = new CacheControlDirective();
         cacheControlDirective.setNoCache(true);
@@ -104,29 +158,139 @@ public static IQuery setLastUpdatedTimeSortOrder(IQuery searchQuery, Boolean isD
     }
 
     public static List<Bundle.BundleEntryComponent> getAllBundleComponentsAsList(Bundle bundle, Optional<Integer> countSize, IGenericClient fhirClient, ConfigProperties configProperties) {
-        int pageNumber = PAGE_NUMBER;
-        int pageSize = countSize.orElse(configProperties.getFhir().getDefaultResourceBundlePageSize());
-        Bundle updatedBundle = bundle;
-        List<Bundle.BundleEntryComponent> bundleEntryComponents = new ArrayList<>();
-        if (!bundle.getEntry().isEmpty()) {
-            bundleEntryComponents.addAll(bundle.getEntry());
+        return getAllBundleComponentsAsList(bundle, countSize, fhirClient, configProperties, Runnable::run);
+    }
+
+    /**
+     * Collects the entries of all pages of a search. Once the first page reports the total, the offsets of the remaining
+     * pages are known, so they are requested concurrently on the given executor (bounded by the configured parallelism)
+     * with the configured prefetch page size, and reassembled in order.
+     * Do not pass an executor whose threads may themselves be waiting on this call.
+     */
+    public static List<Bundle.BundleEntryComponent> getAllBundleComponentsAsList(Bundle bundle, Optional<Integer> countSize, IGenericClient fhirClient, ConfigProperties configProperties, Executor executor) {
+        List<Bundle.BundleEntryComponent> bundleEntryComponents = new ArrayList<>(bundle.getEntry());
+        if (bundle.getEntry().isEmpty() || bundle.getLink(Bundle.LINK_NEXT) == null) {
+            return bundleEntryComponents;
+        }
 
+        if (!bundle.hasTotal()) {
+            // Without a total the page offsets are unknown, so follow the next links
+            Bundle updatedBundle = bundle;
             while (updatedBundle.getLink(Bundle.LINK_NEXT) != null) {
-                int offset = ((pageNumber >= 1 ? pageNumber : 1) - 1) * pageSize;
-                String pageUrl = fhirClient.getServerBase()
-                        + "?_getpages=" + bundle.getId()
-                        + "&_getpagesoffset=" + offset
-                        + "&_count=" + pageSize
-                        + "&_bundletype=searchset";
-
-                updatedBundle = fhirClient.search().byUrl(pageUrl).returnBundle(Bundle.class).execute();
+                updatedBundle = fhirClient.loadPage().next(updatedBundle).execute();
                 bundleEntryComponents.addAll(updatedBundle.getEntry());
-                pageNumber++;
             }
+            return bundleEntryComponents;
+        }
+
+        ConfigProperties.Fhir.PagePrefetch pagePrefetch = configProperties.getFhir().getPagePrefetch();
+        int pageSize = Math.max(countSize.orElse(configProperties.getFhir().getDefaultResourceBundlePageSize()), pagePrefetch.getPageSize());
+        List<Integer> offsets = new ArrayList<>();
+        for (int offset = countSearchMatches(bundle); offset < bundle.getTotal(); offset += pageSize) {
+            offsets.add(offset);
+        }
+
+        Bundle[] pages = new Bundle[offsets.size()];
+        AtomicInteger nextPage = new AtomicInteger();
+        List<CompletableFuture<Void>> pageFetchers = new ArrayList<>();
+        for (int i = 0; i < Math.min(pagePrefetch.getParallelism(), offsets.size()); i++) {
+            pageFetchers.add(CompletableFuture.runAsync(() -> {
+                int page;
+                while ((page = nextPage.getAndIncrement()) < offsets.size()) {
+                    pages[page] = getSearchPageAtOffset(bundle, offsets.get(page), pageSize, fhirClient);
+                }
+            }, executor));
+        }
+        pageFetchers.forEach(FutureUtil::join);
+
+        for (Bundle page : pages) {
+            bundleEntryComponents.addAll(page.getEntry());
         }
         return bundleEntryComponents;
     }
 
+    /**
+     * Lazily iterates over the entries of all pages of a search; the next page is only requested when the
+     * entries of the current one have been consumed.
+     */
+    public static Iterator<Bundle.BundleEntryComponent> bundleEntryIterator(Bundle firstPage, IGenericClient fhirClient) {
+        return new BundleEntryIterator(firstPage, fhirClient, Optional.empty());
+    }
+
+    public static Stream<Bundle.BundleEntryComponent> streamBundleEntries(Bundle firstPage, IGenericClient fhirClient) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(bundleEntryIterator(firstPage, fhirClient), Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Same as {@link #streamBundleEntries(Bundle, IGenericClient)}, but reads one page ahead on the given executor
+     * while the current page is being consumed.
+     */
+    public static Stream<Bundle.BundleEntryComponent> streamBundleEntries(Bundle firstPage, IGenericClient fhirClient, Executor readAheadExecutor) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new BundleEntryIterator(firstPage, fhirClient, Optional.of(readAheadExecutor)), Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private static Bundle getSearchPageAtOffset(Bundle firstPage, int offset, int pageSize, IGenericClient fhirClient) {
+        String pageUrl = fhirClient.getServerBase()
+                + "?_getpages=" + firstPage.getId()
+                + "&_getpagesoffset=" + offset
+                + "&_count=" + pageSize
+                + "&_bundletype=searchset";
+        return fhirClient.search().byUrl(pageUrl).returnBundle(Bundle.class).execute();
+    }
+
+    // Paging offsets count search matches only, not resources added by _include/_revinclude
+    private static int countSearchMatches(Bundle bundle) {
+        return (int) bundle.getEntry().stream()
+                .filter(entry -> !entry.hasSearch() || !entry.getSearch().hasMode() || entry.getSearch().getMode() == Bundle.SearchEntryMode.MATCH)
+                .count();
+    }
+
+    private static class BundleEntryIterator implements Iterator<Bundle.BundleEntryComponent> {
+        private final IGenericClient fhirClient;
+        private final Optional<Executor> readAheadExecutor;
+        private Bundle page;
+        private int index;
+        private CompletableFuture<Bundle> nextPage;
+
+        BundleEntryIterator(Bundle firstPage, IGenericClient fhirClient, Optional<Executor> readAheadExecutor) {
+            this.fhirClient = fhirClient;
+            this.readAheadExecutor = readAheadExecutor;
+            setPage(firstPage);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (index >= page.getEntry().size()) {
+                if (page.getLink(Bundle.LINK_NEXT) == null) {
+                    return false;
+                }
+                setPage(nextPage != null ? FutureUtil.join(nextPage) : loadNextPage(page));
+            }
+            return true;
+        }
+
+        @Override
+        public Bundle.BundleEntryComponent next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.getEntry().get(index++);
+        }
+
+        private void setPage(Bundle newPage) {
+            page = newPage;
+            index = 0;
+            nextPage = null;
+            if (newPage.getLink(Bundle.LINK_NEXT) != null) {
+                readAheadExecutor.ifPresent(executor -> nextPage = CompletableFuture.supplyAsync(() -> loadNextPage(newPage), executor));
+            }
+        }
+
+        private Bundle loadNextPage(Bundle currentPage) {
+            return fhirClient.loadPage().next(currentPage).execute();
+        }
+    }
+
     public static List<UriType> getURIList(IGenericClient fhirClient, String resource) {
         Bundle structureDefinitionBundle = null;
 
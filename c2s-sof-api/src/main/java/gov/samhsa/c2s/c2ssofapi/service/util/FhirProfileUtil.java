@@ -1,40 +1,82 @@
 package gov.samhsa.c2s.c2ssofapi.service.util;
 
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import gov.samhsa.c2s.c2ssofapi.config.ConfigProperties;
+import gov.samhsa.c2s.c2ssofapi.domain.StructureDefinitionEnum;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.hl7.fhir.dstu3.model.ActivityDefinition;
 import org.hl7.fhir.dstu3.model.Consent;
+import org.hl7.fhir.dstu3.model.DomainResource;
 import org.hl7.fhir.dstu3.model.Meta;
 import org.hl7.fhir.dstu3.model.Organization;
 import org.hl7.fhir.dstu3.model.ResourceType;
 import org.hl7.fhir.dstu3.model.UriType;
+import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
+/**
+ * Stamps meta.profile on resources created by this API. The profile URIs of each FHIR server are cached
+ * for the configured time to live, since they almost never change.
+ */
+@Component
 @Slf4j
 public class FhirProfileUtil {
 
-    public static void setConsentProfileMetaData(IGenericClient fhirClient, Consent consent) {
-        List<UriType> uriList = FhirOperationUtil.getURIList(fhirClient, ResourceType.Consent.toString());
-        if (uriList != null && !uriList.isEmpty()) {
-            Meta meta = new Meta().setProfile(uriList);
-            consent.setMeta(meta);
-        }
+    private final RefreshingCache<ProfileCacheKey, List<String>> profileUrls;
+
+    public FhirProfileUtil(ConfigProperties configProperties) {
+        this.profileUrls = new RefreshingCache<>(Duration.ofSeconds(configProperties.getFhir().getProfileCache().getTimeToLiveInSeconds()),
+                configProperties.getFhir().getMaxServers() * ResourceType.values().length);
+    }
+
+    public void setConsentProfileMetaData(IGenericClient fhirClient, Consent consent) {
+        setProfileMetaData(fhirClient, consent, ResourceType.Consent);
+    }
+
+    public void setOrganizationProfileMetaData(IGenericClient fhirClient, Organization organization) {
+        setProfileMetaData(fhirClient, organization, ResourceType.Organization);
+    }
+
+    public void setActivityDefinitionProfileMetaData(IGenericClient fhirClient, ActivityDefinition activityDefinition) {
+        setProfileMetaData(fhirClient, activityDefinition, ResourceType.ActivityDefinition);
     }
 
-    public static void setOrganizationProfileMetaData(IGenericClient fhirClient, Organization organization) {
-        List<UriType> uriList = FhirOperationUtil.getURIList(fhirClient, ResourceType.Organization.toString());
-        if (uriList != null && !uriList.isEmpty()) {
-            Meta meta = new Meta().setProfile(uriList);
-            organization.setMeta(meta);
+    private void setProfileMetaData(IGenericClient fhirClient, DomainResource resource, ResourceType resourceType) {
+        List<String> urls = getProfileUrls(fhirClient, resourceType);
+        if (!urls.isEmpty()) {
+            // Fresh UriType instances, so resources never share the cached values
+            Meta meta = new Meta().setProfile(urls.stream().map(UriType::new).collect(Collectors.toList()));
+            resource.setMeta(meta);
         }
     }
 
-    public static void setActivityDefinitionProfileMetaData(IGenericClient fhirClient, ActivityDefinition activityDefinition) {
-        List<UriType> uriList = FhirOperationUtil.getURIList(fhirClient, ResourceType.ActivityDefinition.toString());
-        if (uriList != null && !uriList.isEmpty()) {
-            Meta meta = new Meta().setProfile(uriList);
-            activityDefinition.setMeta(meta);
+    private List<String> getProfileUrls(IGenericClient fhirClient, ResourceType resourceType) {
+        try {
+            return profileUrls.get(new ProfileCacheKey(fhirClient.getServerBase(), resourceType), () ->
+                    Collections.unmodifiableList(Optional.ofNullable(FhirOperationUtil.getURIList(fhirClient, resourceType.toString()))
+                            .map(uriList -> uriList.stream().map(UriType::getValue).collect(Collectors.toList()))
+                            .orElse(Collections.emptyList())));
+        } catch (BaseServerResponseException e) {
+            // Not cached, so the server is asked again next time
+            log.warn("Could not search StructureDefinitions for " + resourceType + ", using the default profile: " + e.getMessage());
+            return Arrays.stream(StructureDefinitionEnum.values())
+                    .filter(structureDefinition -> structureDefinition.name().equalsIgnoreCase(resourceType.toString()))
+                    .map(StructureDefinitionEnum::getUrl)
+                    .collect(Collectors.toList());
         }
     }
+
+    @Value
+    private static class ProfileCacheKey {
+        String serverBase;
+        ResourceType resourceType;
+    }
 }
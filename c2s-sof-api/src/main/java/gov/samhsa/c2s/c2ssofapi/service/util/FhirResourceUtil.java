@@ -3,7 +3,6 @@
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.gclient.ReferenceClientParam;
 import ca.uhn.fhir.rest.gclient.TokenClientParam;
-import gov.samhsa.c2s.c2ssofapi.config.ConfigProperties;
 import gov.samhsa.c2s.c2ssofapi.domain.KnownIdentifierSystemEnum;
 import gov.samhsa.c2s.c2ssofapi.service.dto.AbstractCareTeamDto;
 import gov.samhsa.c2s.c2ssofapi.service.dto.AddressDto;
@@ -33,9 +32,13 @@
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -197,16 +200,59 @@ public static IdentifierDto entireCovertIdentifierToIdentifierDto(Identifier ide
     }
 
 
-    public static List<AbstractCareTeamDto> getOrganizationActors(Optional<String> patientId, Optional<String> name, Optional<String> organizationId, Optional<List<String>> careTeams, IGenericClient fhirClient, ConfigProperties configProperties) {
+    public static List<AbstractCareTeamDto> getOrganizationActors(Optional<String> patientId, Optional<String> name, Optional<String> organizationId, Optional<List<String>> careTeams, IGenericClient fhirClient) {
+        return searchOrganizationActors(participantIds(organizationId, patientId, careTeams, fhirClient), name, fhirClient);
+    }
+
+    public static List<AbstractCareTeamDto> getPractitionerActors(Optional<String> patientId, Optional<String> name, Optional<String> practitionerId, Optional<List<String>> careTeams, IGenericClient fhirClient) {
+        return searchPractitionerActors(participantIds(practitionerId, patientId, careTeams, fhirClient), name, fhirClient);
+    }
+
+    public static List<AbstractCareTeamDto> getRelatedPersonActors(Optional<String> patientId, Optional<String> name, Optional<String> relatedPersonId, Optional<List<String>> careTeams, IGenericClient fhirClient) {
+        return searchRelatedPersonActors(participantIds(relatedPersonId, patientId, careTeams, fhirClient), name, fhirClient);
+    }
+
+    /**
+     * Resolves the given actor references (e.g. "Organization/123", "Practitioner/456") with a single
+     * <code>_id</code> search per actor resource type.
+     *
+     * @return actors keyed by the reference they were resolved from; references that could not be resolved are absent
+     */
+    public static Map<String, AbstractCareTeamDto> getActorsByReferences(Collection<String> references, IGenericClient fhirClient) {
+        Map<String, AbstractCareTeamDto> actorsByReference = new HashMap<>();
+
+        resolveActorReferences(references, ResourceType.Organization, ids -> searchOrganizationActors(ids, Optional.empty(), fhirClient), actorsByReference);
+        resolveActorReferences(references, ResourceType.Practitioner, ids -> searchPractitionerActors(ids, Optional.empty(), fhirClient), actorsByReference);
+        resolveActorReferences(references, ResourceType.RelatedPerson, ids -> searchRelatedPersonActors(ids, Optional.empty(), fhirClient), actorsByReference);
+
+        return actorsByReference;
+    }
+
+    private static void resolveActorReferences(Collection<String> references, ResourceType resourceType, Function<List<String>, List<AbstractCareTeamDto>> actorSearch, Map<String, AbstractCareTeamDto> actorsByReference) {
+        String resourceTypePrefix = resourceType.name() + "/";
+        Map<String, String> idsByReference = references.stream()
+                .filter(reference -> reference.contains(resourceType.name()))
+                .distinct()
+                .collect(Collectors.toMap(Function.identity(), reference -> reference.replace(resourceTypePrefix, "")));
+
+        if (!idsByReference.isEmpty()) {
+            Map<String, AbstractCareTeamDto> actorsById = actorSearch.apply(idsByReference.values().stream().distinct().collect(Collectors.toList())).stream()
+                    .collect(Collectors.toMap(AbstractCareTeamDto::getId, Function.identity(), (first, second) -> first));
+
+            idsByReference.forEach((reference, id) -> Optional.ofNullable(actorsById.get(id))
+                    .ifPresent(actor -> actorsByReference.put(reference, actor)));
+        }
+    }
+
+    public static List<AbstractCareTeamDto> searchOrganizationActors(List<String> organizationIds, Optional<String> name, IGenericClient fhirClient) {
         Bundle organizationBundle = fhirClient.search().forResource(Organization.class)
-                .where(new TokenClientParam("_id").exactly().codes(participantIds(organizationId, patientId, careTeams, fhirClient)))
+                .where(new TokenClientParam("_id").exactly().codes(organizationIds))
                 .where(new RichStringClientParam("name").matches().value(name.orElse("")))
                 .returnBundle(Bundle.class)
                 .elementsSubset("id", "resourceType", "name", "identifier", "telecom", "address")
                 .execute();
-        List<Bundle.BundleEntryComponent> organizationBundleEntryList = FhirOperationUtil.getAllBundleComponentsAsList(organizationBundle, Optional.empty(), fhirClient, configProperties);
 
-        return organizationBundleEntryList.stream().map(org -> {
+        return FhirOperationUtil.streamBundleEntries(organizationBundle, fhirClient).map(org -> {
             AbstractCareTeamDto abstractCareTeamDto = new AbstractCareTeamDto();
             Organization organization = (Organization) org.getResource();
             abstractCareTeamDto.setId(organization.getIdElement().getIdPart());
@@ -242,17 +288,16 @@ public static List<AbstractCareTeamDto> getOrganizationActors(Optional<String> p
         }).distinct().collect(Collectors.toList());
     }
 
-    public static List<AbstractCareTeamDto> getPractitionerActors(Optional<String> patientId, Optional<String> name, Optional<String> practitionerId, Optional<List<String>> careTeams, IGenericClient fhirClient, ConfigProperties configProperties) {
+    public static List<AbstractCareTeamDto> searchPractitionerActors(List<String> practitionerIds, Optional<String> name, IGenericClient fhirClient) {
         Bundle practitionerBundle = fhirClient.search().forResource(Practitioner.class)
-                .where(new TokenClientParam("_id").exactly().codes(participantIds(practitionerId, patientId, careTeams, fhirClient)))
+                .where(new TokenClientParam("_id").exactly().codes(practitionerIds))
                 .where(new RichStringClientParam("name").matches().value(name.orElse("")))
                 .returnBundle(Bundle.class)
                 .elementsSubset("id", "resourceType", "name", "identifier", "telecom", "address")
                 .execute();
 
-        List<Bundle.BundleEntryComponent> practitionerBundleEntryList = FhirOperationUtil.getAllBundleComponentsAsList(practitionerBundle, Optional.empty(), fhirClient, configProperties);
 
-        return practitionerBundleEntryList.stream().map(pr -> {
+        return FhirOperationUtil.streamBundleEntries(practitionerBundle, fhirClient).map(pr -> {
             AbstractCareTeamDto abstractCareTeamDto = new AbstractCareTeamDto();
             Practitioner practitioner = (Practitioner) pr.getResource();
             abstractCareTeamDto.setId(practitioner.getIdElement().getIdPart());
@@ -292,18 +337,16 @@ public static List<AbstractCareTeamDto> getPractitionerActors(Optional<String> p
     }
 
 
-    public static List<AbstractCareTeamDto> getRelatedPersonActors(Optional<String> patientId, Optional<String> name, Optional<String> relatedPersonId, Optional<List<String>> careTeams, IGenericClient fhirClient, ConfigProperties configProperties) {
-
+    public static List<AbstractCareTeamDto> searchRelatedPersonActors(List<String> relatedPersonIds, Optional<String> name, IGenericClient fhirClient) {
         Bundle relatedBundle = fhirClient.search().forResource(RelatedPerson.class)
-                .where(new TokenClientParam("_id").exactly().codes(participantIds(relatedPersonId, patientId, careTeams, fhirClient)))
+                .where(new TokenClientParam("_id").exactly().codes(relatedPersonIds))
                 .where(new RichStringClientParam("name").matches().value(name.orElse("")))
                 .returnBundle(Bundle.class)
                 .elementsSubset("id", "resourceType", "name", "identifier", "telecom", "address")
                 .execute();
 
-        List<Bundle.BundleEntryComponent> relatedPersonBundleEntryList = FhirOperationUtil.getAllBundleComponentsAsList(relatedBundle, Optional.empty(), fhirClient, configProperties);
 
-        return relatedPersonBundleEntryList.stream().map(rp -> {
+        return FhirOperationUtil.streamBundleEntries(relatedBundle, fhirClient).map(rp -> {
             AbstractCareTeamDto abstractCareTeamDto = new AbstractCareTeamDto();
             RelatedPerson relatedPerson = (RelatedPerson) rp.getResource();
             abstractCareTeamDto.setId(relatedPerson.getIdElement().getIdPart());
@@ -0,0 +1,25 @@
+package gov.samhsa.c2s.c2ssofapi.service.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+public final class FutureUtil {
+
+    private FutureUtil() {
+    }
+
+    /**
+     * Waits for the future and rethrows a failure as the original runtime exception, so the usual
+     * exception to HTTP status mapping still applies to work done on other threads.
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
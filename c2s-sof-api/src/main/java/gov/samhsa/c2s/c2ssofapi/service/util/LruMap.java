@@ -0,0 +1,24 @@
+package gov.samhsa.c2s.c2ssofapi.service.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Map that keeps the most recently used entries up to the given number of entries. Not synchronized.
+ */
+public class LruMap<K, V> extends LinkedHashMap<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxEntries;
+
+    public LruMap(int maxEntries) {
+        super(16, 0.75f, true);
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > maxEntries;
+    }
+}
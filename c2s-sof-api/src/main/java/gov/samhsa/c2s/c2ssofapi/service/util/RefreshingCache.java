@@ -0,0 +1,172 @@
+package gov.samhsa.c2s.c2ssofapi.service.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * In-memory cache with per-entry time to live and optional refresh-ahead.
+ * Concurrent misses for the same key share a single load. Once an entry is older than
+ * the refresh interval it is still served while a reload runs on the refresh executor;
+ * entries older than the time to live are reloaded on the calling thread. Once the cache holds more than the
+ * maximum number of entries, the entries loaded longest ago are dropped.
+ */
+@Slf4j
+public class RefreshingCache<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<Entry<V>>> entries = new ConcurrentHashMap<>();
+    private final Set<K> refreshing = ConcurrentHashMap.newKeySet();
+    private final long timeToLiveInMs;
+    private final long refreshAfterInMs;
+    private final Executor refreshExecutor;
+    private final int maxEntries;
+
+    public RefreshingCache(Duration timeToLive, Duration refreshAfter, Executor refreshExecutor, int maxEntries) {
+        this.timeToLiveInMs = timeToLive != null ? timeToLive.toMillis() : Long.MAX_VALUE;
+        this.refreshAfterInMs = refreshAfter != null && refreshExecutor != null ? refreshAfter.toMillis() : Long.MAX_VALUE;
+        this.refreshExecutor = refreshExecutor;
+        this.maxEntries = maxEntries;
+    }
+
+    public RefreshingCache(Duration timeToLive, int maxEntries) {
+        this(timeToLive, null, null, maxEntries);
+    }
+
+    /**
+     * Creates a cache whose entries never expire; they are only dropped by invalidation or for newer entries.
+     */
+    public RefreshingCache(int maxEntries) {
+        this(null, maxEntries);
+    }
+
+    /**
+     * Returns the cached value for the key, loading it with the given loader when absent or expired.
+     * The loader may also be invoked from the refresh executor, so it must not depend on request-bound state.
+     */
+    public V get(K key, Supplier<V> loader) {
+        while (true) {
+            CompletableFuture<Entry<V>> current = entries.get(key);
+            if (current == null || isExpired(current)) {
+                CompletableFuture<Entry<V>> loading = new CompletableFuture<>();
+                boolean owner = current == null ? entries.putIfAbsent(key, loading) == null : entries.replace(key, current, loading);
+                if (!owner) {
+                    continue;
+                }
+                try {
+                    loading.complete(new Entry<>(loader.get()));
+                } catch (RuntimeException e) {
+                    entries.remove(key, loading);
+                    loading.completeExceptionally(e);
+                    throw e;
+                }
+                if (current == null) {
+                    evictEldest(key);
+                }
+                return loading.join().getValue();
+            }
+            Entry<V> entry = await(current);
+            if (entry.getAgeInMs() >= refreshAfterInMs) {
+                refreshInBackground(key, current, loader);
+            }
+            return entry.getValue();
+        }
+    }
+
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public void invalidateIf(Predicate<K> predicate) {
+        entries.keySet().removeIf(predicate);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Loads in progress are never dropped, so the cache may briefly hold more entries than the maximum
+    private void evictEldest(K loadedKey) {
+        while (entries.size() > maxEntries) {
+            K eldestKey = null;
+            long eldestLoadedAtInMs = Long.MAX_VALUE;
+            for (Map.Entry<K, CompletableFuture<Entry<V>>> entry : entries.entrySet()) {
+                CompletableFuture<Entry<V>> future = entry.getValue();
+                if (!entry.getKey().equals(loadedKey) && future.isDone() && !future.isCompletedExceptionally()
+                        && future.join().loadedAtInMs < eldestLoadedAtInMs) {
+                    eldestKey = entry.getKey();
+                    eldestLoadedAtInMs = future.join().loadedAtInMs;
+                }
+            }
+            if (eldestKey == null) {
+                return;
+            }
+            entries.remove(eldestKey);
+        }
+    }
+
+    private boolean isExpired(CompletableFuture<Entry<V>> future) {
+        return future.isDone() && !future.isCompletedExceptionally() && future.join().getAgeInMs() >= timeToLiveInMs;
+    }
+
+    private void refreshInBackground(K key, CompletableFuture<Entry<V>> current, Supplier<V> loader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    entries.replace(key, current, CompletableFuture.completedFuture(new Entry<>(loader.get())));
+                } catch (RuntimeException e) {
+                    log.warn("Background refresh failed for cache key " + key + ", keeping the current value", e);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+            log.warn("Background refresh rejected for cache key " + key);
+        }
+    }
+
+    private Entry<V> await(CompletableFuture<Entry<V>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long loadedAtInMs = System.currentTimeMillis();
+
+        Entry(V value) {
+            this.value = value;
+        }
+
+        V getValue() {
+            return value;
+        }
+
+        long getAgeInMs() {
+            return System.currentTimeMillis() - loadedAtInMs;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package gov.samhsa.c2s.c2ssofapi.service.util;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.IQuery;
+import gov.samhsa.c2s.c2ssofapi.service.dto.PageDto;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.dstu3.model.Bundle;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Pages through the union of several FHIR searches that are each sorted by _lastUpdated descending.
+ * The searches are merged lazily, newest first, and de-duplicated by resource id; bundle pages are only
+ * requested from the server until the requested page (plus one look-ahead entry) is known.
+ */
+@Slf4j
+public final class SearchResultMerger {
+
+    private static final Comparator<Bundle.BundleEntryComponent> NEWEST_FIRST = Comparator.comparing(
+            (Bundle.BundleEntryComponent entry) -> Optional.ofNullable(entry.getResource().getMeta().getLastUpdated()).orElse(new Date(0)))
+            .reversed();
+
+    private SearchResultMerger() {
+    }
+
+    /**
+     * Returns the requested page of the merged searches.
+     * The total is exact when the searches were exhausted while building the page; otherwise it is the sum of the
+     * totals reported by the server, which can over-count entries shared by several searches or rejected by the filter.
+     * A page after the merged entries is therefore returned empty, with the exact total, instead of being rejected.
+     */
+    public static PageDto<Bundle.BundleEntryComponent> getMergedPage(List<IQuery<?>> searches,
+                                                                    Predicate<Bundle.BundleEntryComponent> filter,
+                                                                    int pageSize,
+                                                                    Optional<Integer> pageNumber,
+                                                                    int maxFetchSize,
+                                                                    IGenericClient fhirClient) {
+        int currentPage = PaginationUtil.isFirstPage(pageNumber) ? 1 : pageNumber.get();
+        int offset = (currentPage - 1) * pageSize;
+        int lookAheadLimit = offset + pageSize + 1;
+        int fetchSize = Math.min(lookAheadLimit, maxFetchSize);
+
+        PriorityQueue<SearchCursor> cursors = new PriorityQueue<>(Comparator.comparing(SearchCursor::peek, NEWEST_FIRST));
+        int reportedTotal = 0;
+        for (IQuery<?> search : searches) {
+            FhirOperationUtil.setNoCacheControlDirective(search);
+            Bundle firstPage = search.count(fetchSize)
+                    .returnBundle(Bundle.class)
+                    .execute();
+            reportedTotal += firstPage.getTotal();
+            SearchCursor cursor = new SearchCursor(firstPage, filter, fhirClient);
+            if (cursor.hasNext()) {
+                cursors.add(cursor);
+            }
+        }
+
+        Set<String> seenIds = new HashSet<>();
+        List<Bundle.BundleEntryComponent> pageEntries = new ArrayList<>();
+        int merged = 0;
+        while (!cursors.isEmpty() && merged < lookAheadLimit) {
+            SearchCursor cursor = cursors.poll();
+            Bundle.BundleEntryComponent entry = cursor.next();
+            if (cursor.hasNext()) {
+                cursors.add(cursor);
+            }
+            if (seenIds.add(entry.getResource().getIdElement().getIdPart())) {
+                if (merged >= offset && pageEntries.size() < pageSize) {
+                    pageEntries.add(entry);
+                }
+                merged++;
+            }
+        }
+
+        if (merged == 0) {
+            return new PageDto<>(new ArrayList<>(), pageSize, 0, 0, 0, 0);
+        }
+        // A page after the merged entries is only reached once the searches are exhausted, where merged is exact
+        int totalElements = merged < lookAheadLimit ? merged : Math.max(merged, reportedTotal);
+        double totalPages = Math.ceil((double) totalElements / pageSize);
+        return new PageDto<>(pageEntries, pageSize, totalPages, currentPage, pageEntries.size(), totalElements);
+    }
+
+    private static class SearchCursor {
+        private final Iterator<Bundle.BundleEntryComponent> entries;
+        private final Predicate<Bundle.BundleEntryComponent> filter;
+        private Bundle.BundleEntryComponent next;
+
+        SearchCursor(Bundle firstPage, Predicate<Bundle.BundleEntryComponent> filter, IGenericClient fhirClient) {
+            this.entries = FhirOperationUtil.bundleEntryIterator(firstPage, fhirClient);
+            this.filter = filter;
+        }
+
+        boolean hasNext() {
+            while (next == null && entries.hasNext()) {
+                Bundle.BundleEntryComponent candidate = entries.next();
+                if (filter.test(candidate)) {
+                    next = candidate;
+                }
+            }
+            return next != null;
+        }
+
+        Bundle.BundleEntryComponent peek() {
+            return next;
+        }
+
+        Bundle.BundleEntryComponent next() {
+            Bundle.BundleEntryComponent current = next;
+            next = null;
+            return current;
+        }
+    }
+}
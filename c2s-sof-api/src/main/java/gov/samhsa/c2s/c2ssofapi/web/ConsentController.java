@@ -3,24 +3,36 @@
 import gov.samhsa.c2s.c2ssofapi.service.ConsentService;
 import gov.samhsa.c2s.c2ssofapi.service.dto.AbstractCareTeamDto;
 import gov.samhsa.c2s.c2ssofapi.service.dto.ConsentDto;
+import gov.samhsa.c2s.c2ssofapi.service.dto.ConsentProjection;
 import gov.samhsa.c2s.c2ssofapi.service.dto.DetailedConsentDto;
 import gov.samhsa.c2s.c2ssofapi.service.dto.GeneralConsentRelatedFieldDto;
 import gov.samhsa.c2s.c2ssofapi.service.dto.PageDto;
 import gov.samhsa.c2s.c2ssofapi.service.dto.PdfDto;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -36,8 +48,9 @@ public PageDto<DetailedConsentDto> getConsents(@RequestParam(value = "patient")
                                                    @RequestParam(value = "status") Optional<String> status,
                                                    @RequestParam(value = "generalDesignation") Optional<Boolean> generalDesignation,
                                                    @RequestParam Optional<Integer> pageNumber,
-                                                   @RequestParam Optional<Integer> pageSize) {
-        return consentService.getConsents(patient, practitioner, status, generalDesignation, pageNumber, pageSize);
+                                                   @RequestParam Optional<Integer> pageSize,
+                                                   @RequestParam(value = "projection") Optional<ConsentProjection> projection) {
+        return consentService.getConsents(patient, practitioner, status, generalDesignation, pageNumber, pageSize, projection);
     }
 
     @GetMapping("/consents/{consentId}")
@@ -50,6 +63,66 @@ public PdfDto createConsentPdf(@PathVariable String consentId) throws IOExceptio
         return consentService.createConsentPdf(consentId);
     }
 
+    /**
+     * ZIP of the PDFs of the attested consents of the patient and/or the organization, written to the response as
+     * the PDFs are rendered. The FHIR client is request scoped, so the export runs on the request thread.
+     */
+    @GetMapping(value = "/consents/pdf-export", produces = "application/zip")
+    public void exportConsentPdfs(@RequestParam(value = "patient") Optional<String> patient,
+                                  @RequestParam(value = "organization") Optional<String> organization,
+                                  HttpServletResponse response) throws IOException {
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"consents.zip\"");
+        consentService.exportConsentPdfs(patient, organization, response.getOutputStream());
+    }
+
+    /**
+     * Binary form of the consent PDF for clients accepting application/pdf. The body carries a strong ETag, so
+     * conditional requests are answered with 304, and a single byte range is answered with partial content.
+     */
+    @GetMapping(value = "/consents/{consentId}/pdf", produces = MediaType.APPLICATION_PDF_VALUE)
+    public ResponseEntity<Resource> getConsentPdfDocument(@PathVariable String consentId,
+                                                          @RequestHeader HttpHeaders requestHeaders) {
+        byte[] pdfBytes = consentService.createConsentPdf(consentId).getPdfBytes();
+        String eTag = "\"" + DigestUtils.md5DigestAsHex(pdfBytes) + "\"";
+        HttpHeaders responseHeaders = new HttpHeaders();
+        responseHeaders.setContentType(MediaType.APPLICATION_PDF);
+        responseHeaders.setETag(eTag);
+        responseHeaders.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        responseHeaders.set(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"consent-" + consentId + ".pdf\"");
+
+        // A range is only served if the client's copy is current (If-Range) and a single range was requested
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        List<HttpRange> ranges = ifRange == null || ifRange.equals(eTag) ? parseRanges(requestHeaders) : Collections.emptyList();
+        if (ranges.size() == 1) {
+            long start = ranges.get(0).getRangeStart(pdfBytes.length);
+            long end = ranges.get(0).getRangeEnd(pdfBytes.length);
+            if (start >= pdfBytes.length || start > end) {
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + pdfBytes.length)
+                        .build();
+            }
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .headers(responseHeaders)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + pdfBytes.length)
+                    .contentLength(end - start + 1)
+                    .body(new ByteArrayResource(Arrays.copyOfRange(pdfBytes, (int) start, (int) end + 1)));
+        }
+        return ResponseEntity.ok()
+                .headers(responseHeaders)
+                .contentLength(pdfBytes.length)
+                .body(new ByteArrayResource(pdfBytes));
+    }
+
+    private List<HttpRange> parseRanges(HttpHeaders requestHeaders) {
+        try {
+            return requestHeaders.getRange();
+        } catch (IllegalArgumentException e) {
+            // Malformed ranges are ignored and the whole document is returned
+            return Collections.emptyList();
+        }
+    }
+
     @PutMapping("/consents/{consentId}/attestation")
     @ResponseStatus(HttpStatus.OK)
     public void attestConsent(@PathVariable String consentId) {
@@ -64,8 +137,9 @@ public void revokeConsent(@PathVariable String consentId) {
 
     @PostMapping("/consents")
     @ResponseStatus(HttpStatus.CREATED)
-    public void createConsent(@Valid @RequestBody ConsentDto consentDto) {
-        consentService.createConsent(consentDto);
+    public void createConsent(@Valid @RequestBody ConsentDto consentDto,
+                              @RequestHeader(value = "Idempotency-Key") Optional<String> idempotencyKey) {
+        consentService.createConsent(consentDto, idempotencyKey);
         log.info("Consent successfully created");
     }
 
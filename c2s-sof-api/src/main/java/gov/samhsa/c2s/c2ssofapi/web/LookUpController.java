@@ -5,9 +5,12 @@
 import gov.samhsa.c2s.c2ssofapi.service.dto.LookUpTypeEnum;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
@@ -59,4 +62,10 @@ public LookUpDataDto getAllLookUpValues(@RequestParam(value = "lookUpTypeList",
         }
         return lookUpData;
     }
+
+    @DeleteMapping("/cache")
+    @ResponseStatus(HttpStatus.OK)
+    public void evictCachedLookUpValues() {
+        lookUpService.evictCachedValueSets();
+    }
 }
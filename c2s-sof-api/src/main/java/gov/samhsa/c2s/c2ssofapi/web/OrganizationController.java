@@ -4,10 +4,13 @@
 import gov.samhsa.c2s.c2ssofapi.service.dto.OrganizationDto;
 import gov.samhsa.c2s.c2ssofapi.service.dto.PageDto;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
@@ -43,4 +46,10 @@ public PageDto<OrganizationDto> searchOrganizations(@RequestParam Optional<Searc
     public List<OrganizationDto> getOrganizationsByPractitionerId(@RequestParam(value = "practitionerId") String practitionerId) {
         return organizationService.getOrganizationsByPractitionerId(practitionerId);
     }
+
+    @DeleteMapping("/pseudo-organization/cache")
+    @ResponseStatus(HttpStatus.OK)
+    public void evictCachedPseudoOrganization() {
+        organizationService.evictCachedPseudoOrganization();
+    }
 }
@@ -0,0 +1,186 @@
+package gov.samhsa.c2s.c2ssofapi.service.pdf;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConsentPdfArchiveWriterTest {
+
+    private static final int THREAD_COUNT = 4;
+
+    private ExecutorService renderExecutor;
+
+    @Before
+    public void setUp() {
+        renderExecutor = Executors.newFixedThreadPool(THREAD_COUNT);
+    }
+
+    @After
+    public void tearDown() {
+        renderExecutor.shutdownNow();
+    }
+
+    @Test
+    public void finish_whenRendersCompleteOutOfOrder_thenEveryPdfIsStoredOnce() throws Exception {
+        int pdfCount = 200;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ConsentPdfArchiveWriter archive = new ConsentPdfArchiveWriter(out, renderExecutor, THREAD_COUNT * 2)) {
+            for (int i = 0; i < pdfCount; i++) {
+                int index = i;
+                archive.add("consent-" + i + ".pdf", () -> {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(index % 5));
+                    return pdf(index);
+                });
+            }
+            assertEquals(pdfCount, archive.finish());
+        }
+
+        Map<String, byte[]> entries = readEntries(out.toByteArray());
+        assertEquals(pdfCount, entries.size());
+        for (int i = 0; i < pdfCount; i++) {
+            assertArrayEquals(pdf(i), entries.get("consent-" + i + ".pdf"));
+        }
+        File zip = writeTempFile(out.toByteArray());
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            assertEquals(pdfCount, zipFile.size());
+            zipFile.stream().forEach(entry -> assertEquals(ZipEntry.STORED, entry.getMethod()));
+        } finally {
+            Files.delete(zip.toPath());
+        }
+    }
+
+    @Test
+    public void add_whenMaxRendersArePending_thenWaitsForACompletedRender() throws Exception {
+        int maxPendingRenders = 2;
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger startedRenders = new AtomicInteger();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try (ConsentPdfArchiveWriter archive = new ConsentPdfArchiveWriter(out, renderExecutor, maxPendingRenders)) {
+            Future<Integer> export = caller.submit(() -> {
+                for (int i = 0; i <= maxPendingRenders; i++) {
+                    int index = i;
+                    archive.add("consent-" + i + ".pdf", () -> {
+                        startedRenders.incrementAndGet();
+                        await(release);
+                        return pdf(index);
+                    });
+                }
+                return archive.finish();
+            });
+
+            try {
+                export.get(200, TimeUnit.MILLISECONDS);
+                fail("Added a render while the maximum number of renders was pending");
+            } catch (TimeoutException expected) {
+                assertEquals(maxPendingRenders, startedRenders.get());
+            }
+            release.countDown();
+            assertEquals(maxPendingRenders + 1, (int) export.get(10, TimeUnit.SECONDS));
+        } finally {
+            caller.shutdownNow();
+        }
+        assertEquals(maxPendingRenders + 1, readEntries(out.toByteArray()).size());
+    }
+
+    @Test
+    public void finish_whenARenderFails_thenRethrowsAndLeavesTheArchiveIncomplete() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CountDownLatch failure = new CountDownLatch(1);
+        CountDownLatch never = new CountDownLatch(1);
+        // With two renders pending, adding the third one writes the first one, the failing render is still waiting
+        try (ConsentPdfArchiveWriter archive = new ConsentPdfArchiveWriter(out, renderExecutor, 2)) {
+            archive.add("consent-0.pdf", () -> pdf(0));
+            archive.add("consent-1.pdf", () -> {
+                await(failure);
+                throw new IOException("Cannot render consent 1");
+            });
+            archive.add("consent-2.pdf", () -> {
+                await(never);
+                return pdf(2);
+            });
+            failure.countDown();
+            archive.finish();
+            fail("The render failure was not rethrown");
+        } catch (IOException e) {
+            assertEquals("Cannot render consent 1", e.getMessage());
+        }
+
+        assertEquals(1, readEntries(out.toByteArray()).size());
+        File zip = writeTempFile(out.toByteArray());
+        try {
+            new ZipFile(zip).close();
+            fail("The incomplete archive has a central directory");
+        } catch (ZipException expected) {
+            // The archive ends after the entries written before the failure
+        } finally {
+            Files.delete(zip.toPath());
+        }
+        renderExecutor.shutdown();
+        assertTrue("The pending render was not cancelled", renderExecutor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private static byte[] pdf(int index) {
+        return ("%PDF-1.4 consent " + index).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // Renderers may only throw IOException, a cancelled render is interrupted while waiting
+    private static void await(CountDownLatch latch) throws InterruptedIOException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Render cancelled");
+        }
+    }
+
+    private static Map<String, byte[]> readEntries(byte[] zip) throws IOException {
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    content.write(buffer, 0, read);
+                }
+                entries.put(entry.getName(), content.toByteArray());
+            }
+        }
+        return entries;
+    }
+
+    private static File writeTempFile(byte[] content) throws IOException {
+        File file = File.createTempFile("consents", ".zip");
+        Files.write(file.toPath(), content);
+        return file;
+    }
+}
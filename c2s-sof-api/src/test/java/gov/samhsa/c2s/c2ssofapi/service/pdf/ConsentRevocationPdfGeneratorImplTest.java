@@ -0,0 +1,197 @@
+package gov.samhsa.c2s.c2ssofapi.service.pdf;
+
+import gov.samhsa.c2s.c2ssofapi.config.PdfProperties;
+import gov.samhsa.c2s.c2ssofapi.service.dto.DetailedConsentDto;
+import gov.samhsa.c2s.c2ssofapi.service.dto.NameDto;
+import gov.samhsa.c2s.c2ssofapi.service.dto.PatientDto;
+import gov.samhsa.c2s.c2ssofapi.service.dto.ReferenceDto;
+import gov.samhsa.c2s.c2ssofapi.service.dto.TelecomDto;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Renders revocation PDFs for several patients in parallel and checks that every document is identical to the one
+ * rendered on its own, with every PDF engine. All objects of the documents are compared, with their streams decoded,
+ * so fonts and images are covered too. The render date is printed in the signing details and the footer, so dates
+ * are masked, and the file identifier, which PDFBox derives from the time of saving, is left out.
+ */
+@RunWith(Parameterized.class)
+public class ConsentRevocationPdfGeneratorImplTest {
+
+    private static final int PATIENT_COUNT = 8;
+
+    private static final int RENDER_COUNT = 64;
+
+    private static final int THREAD_COUNT = 16;
+
+    private static final Pattern DATE_PATTERN = Pattern.compile("[A-Z][a-z]{2} \\d{2}, \\d{4}|\\d{2} [A-Z][a-z]{2} \\d{4}");
+
+    @Parameterized.Parameter
+    public PdfEngine pdfEngine;
+
+    private ConsentRevocationPdfGenerator consentRevocationPdfGenerator;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<PdfEngine> pdfEngines() {
+        return Arrays.asList(new HexPdfEngine(), new PdfBoxEngine(new PdfProperties.PdfBox().getFontFile()));
+    }
+
+    @Before
+    public void setUp() {
+        PdfProperties pdfProperties = new PdfProperties();
+        pdfProperties.setPdfConfigs(Arrays.asList(
+                pdfConfig("consent-pdf", "Consent to Share My Health Information"),
+                pdfConfig("consent-revocation-pdf", "Revocation of Consent to Share My Health Information")));
+        consentRevocationPdfGenerator = new ConsentRevocationPdfGeneratorImpl(new ConsentPdfGeneratorImpl(pdfProperties, pdfEngine), pdfEngine);
+    }
+
+    @Test
+    public void generateConsentRevocationPdf_whenRenderedConcurrently_thenDocumentsAreDeterministic() throws Exception {
+        String signatureDataUrl = signatureDataUrl();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < PATIENT_COUNT; i++) {
+            expected.add(render(i, signatureDataUrl));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<String>> rendered = new ArrayList<>();
+            for (int i = 0; i < RENDER_COUNT; i++) {
+                int patientIndex = i % PATIENT_COUNT;
+                rendered.add(executor.submit((Callable<String>) () -> {
+                    start.await();
+                    return render(patientIndex, signatureDataUrl);
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < RENDER_COUNT; i++) {
+                assertEquals("Revocation PDF " + i + " differs from the sequential render", expected.get(i % PATIENT_COUNT), rendered.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private String render(int patientIndex, String signatureDataUrl) throws IOException {
+        // Every other patient signs, so documents with and without a signature image are rendered side by side
+        Optional<String> signature = patientIndex % 2 == 0 ? Optional.of(signatureDataUrl) : Optional.empty();
+        byte[] pdf = consentRevocationPdfGenerator.generateConsentRevocationPdf(consent(patientIndex), patient(patientIndex), true, signature);
+        return documentContents(pdf);
+    }
+
+    private static String documentContents(byte[] pdf) throws IOException {
+        StringBuilder contents = new StringBuilder();
+        try (PDDocument document = PDDocument.load(pdf)) {
+            List<COSObject> objects = new ArrayList<>(document.getDocument().getObjects());
+            objects.sort(Comparator.comparing(COSObject::getObjectNumber).thenComparing(COSObject::getGenerationNumber));
+            for (COSObject object : objects) {
+                contents.append(object.getObjectNumber()).append(' ').append(object.getGenerationNumber()).append(" obj ");
+                appendObject(contents, object.getObject());
+                contents.append('\n');
+            }
+        }
+        return DATE_PATTERN.matcher(contents).replaceAll("DATE");
+    }
+
+    private static void appendObject(StringBuilder contents, COSBase object) throws IOException {
+        if (object instanceof COSObject) {
+            contents.append(((COSObject) object).getObjectNumber()).append(" R");
+        } else if (object instanceof COSDictionary) {
+            contents.append("<<");
+            for (Map.Entry<COSName, COSBase> entry : ((COSDictionary) object).entrySet()) {
+                contents.append(' ').append(entry.getKey().getName()).append(' ');
+                appendObject(contents, entry.getValue());
+            }
+            contents.append(" >>");
+            if (object instanceof COSStream) {
+                try (InputStream data = ((COSStream) object).createInputStream()) {
+                    contents.append(" stream ").append(new String(IOUtils.toByteArray(data), StandardCharsets.ISO_8859_1));
+                }
+            }
+        } else if (object instanceof COSArray) {
+            contents.append('[');
+            for (COSBase item : (COSArray) object) {
+                contents.append(' ');
+                appendObject(contents, item);
+            }
+            contents.append(" ]");
+        } else {
+            contents.append(object);
+        }
+    }
+
+    private static DetailedConsentDto consent(int patientIndex) {
+        return DetailedConsentDto.builder()
+                .logicalId("consent-" + patientIndex)
+                .patient(ReferenceDto.builder().reference("Patient/patient-" + patientIndex).display("Patient " + patientIndex).build())
+                .build();
+    }
+
+    private static PatientDto patient(int patientIndex) {
+        return PatientDto.builder()
+                .id("patient-" + patientIndex)
+                .name(Collections.singletonList(NameDto.builder().firstName("First" + patientIndex).lastName("Last" + patientIndex).build()))
+                .birthDate(LocalDate.of(1970 + patientIndex, 1 + patientIndex, 10 + patientIndex))
+                .telecoms(Collections.singletonList(TelecomDto.builder()
+                        .system(Optional.of("EMAIL"))
+                        .value(Optional.of("patient" + patientIndex + "@example.com"))
+                        .use(Optional.of("HOME"))
+                        .build()))
+                .build();
+    }
+
+    private static PdfProperties.PdfConfig pdfConfig(String type, String title) {
+        PdfProperties.PdfConfig pdfConfig = new PdfProperties.PdfConfig();
+        pdfConfig.setType(type);
+        pdfConfig.setTitle(title);
+        return pdfConfig;
+    }
+
+    private static String signatureDataUrl() throws IOException {
+        BufferedImage image = new BufferedImage(200, 60, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.BLACK);
+        graphics.drawLine(10, 40, 190, 20);
+        graphics.dispose();
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return "data:image/png;base64," + Base64.encodeBase64String(png.toByteArray());
+    }
+}
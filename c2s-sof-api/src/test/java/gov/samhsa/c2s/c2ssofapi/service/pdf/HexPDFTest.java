@@ -0,0 +1,55 @@
+package gov.samhsa.c2s.c2ssofapi.service.pdf;
+
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class HexPDFTest {
+
+    @Test
+    public void finish_whenBodyFontSizeDiffers_thenFootersUseTheFooterFontSize() throws IOException {
+        Footer footer = new Footer();
+        footer.setOMIT_FIRSTPAGE(false);
+        HexPDF document = new HexPDF();
+        document.setFooter(footer);
+        document.newPage();
+        document.setFontSize(15);
+        document.drawText("First page\n");
+        document.newPage();
+        document.setFontSize(12);
+        document.drawText("Second page\n");
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        document.finish(pdf);
+
+        try (PDDocument rendered = PDDocument.load(pdf.toByteArray())) {
+            assertEquals(2, rendered.getNumberOfPages());
+            for (PDPage page : rendered.getPages()) {
+                // The footer is the last text drawn on a page
+                assertEquals(footer.getFontsize(), lastFontSize(page), 0);
+            }
+        }
+    }
+
+    private static float lastFontSize(PDPage page) throws IOException {
+        PDFStreamParser parser = new PDFStreamParser(page);
+        parser.parse();
+        List<Object> tokens = parser.getTokens();
+        float fontSize = -1;
+        for (int i = 1; i < tokens.size(); i++) {
+            Object token = tokens.get(i);
+            if (token instanceof Operator && ((Operator) token).getName().equals("Tf")) {
+                fontSize = ((COSNumber) tokens.get(i - 1)).floatValue();
+            }
+        }
+        return fontSize;
+    }
+}
@@ -0,0 +1,194 @@
+package gov.samhsa.c2s.c2ssofapi.service.pdf;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Decodes the embedded images with PDFBox and compares them with the PNGs decoded by ImageIO. The PNGs are encoded
+ * here, so that every row filter type is used.
+ */
+public class ImageXObjectFactoryTest {
+
+    private static final int GRAY = 0;
+    private static final int RGB = 2;
+    private static final int GRAY_ALPHA = 4;
+    private static final int RGB_ALPHA = 6;
+
+    private static final int WIDTH = 37;
+
+    private static final int HEIGHT = 23;
+
+    private PDDocument document;
+
+    @Before
+    public void setUp() {
+        document = new PDDocument();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        document.close();
+    }
+
+    @Test
+    public void createFromImageData_whenGrayPng_thenPixelsAreKept() throws IOException {
+        PDImageXObject image = assertRoundTrip(png(GRAY, 1, true));
+        assertEquals(COSName.FLATE_DECODE, image.getCOSObject().getCOSName(COSName.FILTER));
+    }
+
+    @Test
+    public void createFromImageData_whenRgbPng_thenPixelsAreKept() throws IOException {
+        assertRoundTrip(png(RGB, 3, true));
+    }
+
+    @Test
+    public void createFromImageData_whenGrayAlphaPng_thenAlphaBecomesSoftMask() throws IOException {
+        PDImageXObject image = assertRoundTrip(png(GRAY_ALPHA, 2, false));
+        assertTrue(image.getCOSObject().containsKey(COSName.SMASK));
+    }
+
+    @Test
+    public void createFromImageData_whenRgbAlphaPng_thenAlphaBecomesSoftMask() throws IOException {
+        PDImageXObject image = assertRoundTrip(png(RGB_ALPHA, 4, false));
+        assertTrue(image.getCOSObject().containsKey(COSName.SMASK));
+    }
+
+    @Test
+    public void createFromImageData_whenOpaqueRgbAlphaPng_thenNoSoftMask() throws IOException {
+        PDImageXObject image = assertRoundTrip(png(RGB_ALPHA, 4, true));
+        assertFalse(image.getCOSObject().containsKey(COSName.SMASK));
+    }
+
+    @Test
+    public void createFromImageData_whenPngIsTooLarge_thenRejectedBeforeDecoding() throws IOException {
+        for (int[] dimensions : new int[][]{{100_000, 100_000}, {Integer.MAX_VALUE, 1}, {4097, 1}, {4096, 4096}}) {
+            byte[] png = png(RGB_ALPHA, dimensions[0], dimensions[1], new byte[0]);
+            try {
+                ImageXObjectFactory.createFromImageData(document, png);
+                fail("Accepted a " + dimensions[0] + "x" + dimensions[1] + " image");
+            } catch (IOException e) {
+                assertEquals("Unsupported image dimensions " + dimensions[0] + "x" + dimensions[1], e.getMessage());
+            }
+        }
+    }
+
+    private PDImageXObject assertRoundTrip(byte[] png) throws IOException {
+        PDImageXObject image = ImageXObjectFactory.createFromImageData(document, png);
+        BufferedImage embedded = image.getImage();
+        Raster expected = ImageIO.read(new ByteArrayInputStream(png)).getRaster();
+        boolean alpha = expected.getNumBands() == 2 || expected.getNumBands() == 4;
+        boolean gray = expected.getNumBands() <= 2;
+        assertEquals(WIDTH, embedded.getWidth());
+        assertEquals(HEIGHT, embedded.getHeight());
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int argb = embedded.getRGB(x, y);
+                String pixel = "pixel " + x + "," + y;
+                if (gray) {
+                    assertEquals(pixel, expected.getSample(x, y, 0), argb & 0xff);
+                    assertEquals(pixel, expected.getSample(x, y, 0), (argb >> 8) & 0xff);
+                    assertEquals(pixel, expected.getSample(x, y, 0), (argb >> 16) & 0xff);
+                } else {
+                    assertEquals(pixel, expected.getSample(x, y, 0), (argb >> 16) & 0xff);
+                    assertEquals(pixel, expected.getSample(x, y, 1), (argb >> 8) & 0xff);
+                    assertEquals(pixel, expected.getSample(x, y, 2), argb & 0xff);
+                }
+                int expectedAlpha = alpha ? expected.getSample(x, y, expected.getNumBands() - 1) : 0xff;
+                assertEquals(pixel, expectedAlpha, argb >>> 24);
+            }
+        }
+        return image;
+    }
+
+    // Random pixels, row y filtered with filter type y % 5, so every filter type is used on every kind of row
+    private static byte[] png(int colorType, int bytesPerPixel, boolean opaque) throws IOException {
+        Random random = new Random(colorType);
+        int stride = WIDTH * bytesPerPixel;
+        byte[] pixels = new byte[stride * HEIGHT];
+        random.nextBytes(pixels);
+        for (int i = bytesPerPixel - 1; i < pixels.length && (colorType == GRAY_ALPHA || colorType == RGB_ALPHA); i += bytesPerPixel) {
+            pixels[i] = opaque ? (byte) 0xff : new byte[]{0, (byte) 0xff, (byte) random.nextInt(256)}[random.nextInt(3)];
+        }
+
+        ByteArrayOutputStream filtered = new ByteArrayOutputStream();
+        for (int y = 0; y < HEIGHT; y++) {
+            int filter = y % 5;
+            filtered.write(filter);
+            for (int x = 0; x < stride; x++) {
+                int value = pixels[y * stride + x] & 0xff;
+                int left = (x >= bytesPerPixel) ? pixels[y * stride + x - bytesPerPixel] & 0xff : 0;
+                int up = (y > 0) ? pixels[(y - 1) * stride + x] & 0xff : 0;
+                int upLeft = (x >= bytesPerPixel && y > 0) ? pixels[(y - 1) * stride + x - bytesPerPixel] & 0xff : 0;
+                int predictor = new int[]{0, left, up, (left + up) >>> 1, paeth(left, up, upLeft)}[filter];
+                filtered.write(value - predictor);
+            }
+        }
+        return png(colorType, WIDTH, HEIGHT, filtered.toByteArray());
+    }
+
+    private static byte[] png(int colorType, int width, int height, byte[] filteredRows) throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        png.write(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        headerData.write(new byte[]{8, (byte) colorType, 0, 0, 0});
+        writeChunk(png, "IHDR", header.toByteArray());
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(compressed)) {
+            out.write(filteredRows);
+        }
+        // Split the image data, readers have to join IDAT chunks
+        byte[] imageData = compressed.toByteArray();
+        writeChunk(png, "IDAT", Arrays.copyOfRange(imageData, 0, imageData.length / 2));
+        writeChunk(png, "IDAT", Arrays.copyOfRange(imageData, imageData.length / 2, imageData.length));
+        writeChunk(png, "IEND", new byte[0]);
+        return png.toByteArray();
+    }
+
+    private static void writeChunk(ByteArrayOutputStream png, String type, byte[] data) throws IOException {
+        DataOutputStream out = new DataOutputStream(png);
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        out.writeInt(data.length);
+        out.write(typeBytes);
+        out.write(data);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static int paeth(int left, int up, int upLeft) {
+        int estimate = left + up - upLeft;
+        int distanceLeft = Math.abs(estimate - left);
+        int distanceUp = Math.abs(estimate - up);
+        int distanceUpLeft = Math.abs(estimate - upLeft);
+        if (distanceLeft <= distanceUp && distanceLeft <= distanceUpLeft) {
+            return left;
+        }
+        return (distanceUp <= distanceUpLeft) ? up : upLeft;
+    }
+}
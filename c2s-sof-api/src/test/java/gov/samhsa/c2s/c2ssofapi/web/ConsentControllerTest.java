@@ -0,0 +1,193 @@
+package gov.samhsa.c2s.c2ssofapi.web;
+
+import gov.samhsa.c2s.c2ssofapi.service.ConsentService;
+import gov.samhsa.c2s.c2ssofapi.service.dto.ConsentProjection;
+import gov.samhsa.c2s.c2ssofapi.service.dto.PageDto;
+import gov.samhsa.c2s.c2ssofapi.service.dto.PdfDto;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Content negotiation, conditional requests and byte ranges of the consent PDF endpoints, and the projection of the
+ * consent listing.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ConsentControllerTest {
+
+    private static final String CONSENT_ID = "123";
+
+    private static final String PDF_URL = "/consents/" + CONSENT_ID + "/pdf";
+
+    private static final byte[] PDF = "%PDF-1.4 consent document %%EOF".getBytes(StandardCharsets.US_ASCII);
+
+    private static final String ETAG = "\"" + DigestUtils.md5DigestAsHex(PDF) + "\"";
+
+    @Mock
+    private ConsentService consentService;
+
+    @InjectMocks
+    private ConsentController consentController;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(consentController).build();
+        when(consentService.createConsentPdf(CONSENT_ID)).thenReturn(new PdfDto(PDF));
+    }
+
+    @Test
+    public void getConsentPdf_whenNoAccept_thenJson() throws Exception {
+        mockMvc.perform(get(PDF_URL))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.pdfBytes").value(Base64.encodeBase64String(PDF)));
+    }
+
+    @Test
+    public void getConsentPdf_whenAcceptAll_thenJson() throws Exception {
+        mockMvc.perform(get(PDF_URL).accept(MediaType.ALL))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.pdfBytes").value(Base64.encodeBase64String(PDF)));
+    }
+
+    @Test
+    public void getConsentPdf_whenAcceptJson_thenJson() throws Exception {
+        mockMvc.perform(get(PDF_URL).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    public void getConsentPdf_whenAcceptPdf_thenWholeDocument() throws Exception {
+        mockMvc.perform(get(PDF_URL).accept(MediaType.APPLICATION_PDF))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_PDF))
+                .andExpect(content().bytes(PDF))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, PDF.length))
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"consent-" + CONSENT_ID + ".pdf\""));
+    }
+
+    @Test
+    public void getConsentPdf_whenIfNoneMatchCurrentETag_thenNotModified() throws Exception {
+        MvcResult result = mockMvc.perform(get(PDF_URL).accept(MediaType.APPLICATION_PDF).header(HttpHeaders.IF_NONE_MATCH, ETAG))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG))
+                .andReturn();
+        assertArrayEquals(new byte[0], result.getResponse().getContentAsByteArray());
+    }
+
+    @Test
+    public void getConsentPdf_whenIfNoneMatchStaleETag_thenWholeDocument() throws Exception {
+        mockMvc.perform(get(PDF_URL).accept(MediaType.APPLICATION_PDF).header(HttpHeaders.IF_NONE_MATCH, "\"stale\""))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(PDF));
+    }
+
+    @Test
+    public void getConsentPdf_whenSingleRange_thenPartialContent() throws Exception {
+        mockMvc.perform(get(PDF_URL).accept(MediaType.APPLICATION_PDF).header(HttpHeaders.RANGE, "bytes=0-7"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-7/" + PDF.length))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 8))
+                .andExpect(content().bytes(Arrays.copyOfRange(PDF, 0, 8)));
+    }
+
+    @Test
+    public void getConsentPdf_whenSuffixRange_thenLastBytes() throws Exception {
+        mockMvc.perform(get(PDF_URL).accept(MediaType.APPLICATION_PDF).header(HttpHeaders.RANGE, "bytes=-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes " + (PDF.length - 5) + "-" + (PDF.length - 1) + "/" + PDF.length))
+                .andExpect(content().bytes(Arrays.copyOfRange(PDF, PDF.length - 5, PDF.length)));
+    }
+
+    @Test
+    public void getConsentPdf_whenRangeEndsAfterDocument_thenPartialContentUpToTheEnd() throws Exception {
+        mockMvc.perform(get(PDF_URL).accept(MediaType.APPLICATION_PDF).header(HttpHeaders.RANGE, "bytes=10-100000"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 10-" + (PDF.length - 1) + "/" + PDF.length))
+                .andExpect(content().bytes(Arrays.copyOfRange(PDF, 10, PDF.length)));
+    }
+
+    @Test
+    public void getConsentPdf_whenRangeStartsAfterDocument_thenRangeNotSatisfiable() throws Exception {
+        mockMvc.perform(get(PDF_URL).accept(MediaType.APPLICATION_PDF).header(HttpHeaders.RANGE, "bytes=" + PDF.length + "-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */" + PDF.length));
+    }
+
+    @Test
+    public void getConsentPdf_whenSeveralRanges_thenWholeDocument() throws Exception {
+        mockMvc.perform(get(PDF_URL).accept(MediaType.APPLICATION_PDF).header(HttpHeaders.RANGE, "bytes=0-1,4-5"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(PDF));
+    }
+
+    @Test
+    public void getConsentPdf_whenMalformedRange_thenWholeDocument() throws Exception {
+        mockMvc.perform(get(PDF_URL).accept(MediaType.APPLICATION_PDF).header(HttpHeaders.RANGE, "pages=1"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(PDF));
+    }
+
+    @Test
+    public void getConsentPdf_whenIfRangeCurrentETag_thenPartialContent() throws Exception {
+        mockMvc.perform(get(PDF_URL).accept(MediaType.APPLICATION_PDF).header(HttpHeaders.RANGE, "bytes=0-7").header(HttpHeaders.IF_RANGE, ETAG))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().bytes(Arrays.copyOfRange(PDF, 0, 8)));
+    }
+
+    @Test
+    public void getConsentPdf_whenIfRangeStaleETag_thenWholeDocument() throws Exception {
+        mockMvc.perform(get(PDF_URL).accept(MediaType.APPLICATION_PDF).header(HttpHeaders.RANGE, "bytes=0-7").header(HttpHeaders.IF_RANGE, "\"stale\""))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(PDF));
+    }
+
+    @Test
+    public void getConsents_whenSummaryProjection_thenPassedAsEnum() throws Exception {
+        when(consentService.getConsents(any(), any(), any(), any(), any(), any(), any()))
+                .thenReturn(new PageDto<>(Collections.emptyList(), 0, 0, 0, 0, 0));
+        mockMvc.perform(get("/consents").param("projection", "SUMMARY"))
+                .andExpect(status().isOk());
+        verify(consentService).getConsents(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(),
+                Optional.empty(), Optional.of(ConsentProjection.SUMMARY));
+    }
+
+    @Test
+    public void getConsents_whenUnknownProjection_thenBadRequest() throws Exception {
+        mockMvc.perform(get("/consents").param("projection", "everything"))
+                .andExpect(status().isBadRequest());
+        verifyZeroInteractions(consentService);
+    }
+}